@@ -0,0 +1,138 @@
+package gitlet;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Batch class for Gitlet, the tiny stupid version-control system.
+ * "gitlet batch" runs one command per line of its standard input in a
+ * single process, as if each line had been given to gitlet on its own.
+ * Words are separated by spaces; double quotes group words, and a
+ * backslash inside quotes escapes the next character. Blank lines and
+ * lines starting with # are skipped. The staging area is kept in memory
+ * and written after each commit or merge and at the end, instead of
+ * after every add and rm, and output is buffered. A command that fails
+ * is reported on standard error with its line number, and the rest
+ * still run.
+ *
+ * @author Erin Bhan
+ */
+class Batch {
+
+    /** Runs the commands read from IN against REPO.
+     * @param repo The repository.
+     * @param in The commands.
+     * @return Returns the number of commands that failed.
+     */
+    static int run(Repo repo, InputStream in) throws IOException {
+        BufferedReader lines = new BufferedReader(new InputStreamReader(in),
+                Utils.BUFFER_SIZE);
+        int failed = 0;
+        int lineNo = 0;
+        PrintStream stdout = System.out;
+        PrintStream out = new PrintStream(new BufferedOutputStream(
+                new FileOutputStream(FileDescriptor.out), Utils.BUFFER_SIZE));
+        System.setOut(out);
+        Repo.deferStaging(true);
+        try {
+            for (String line = lines.readLine(); line != null;
+                 line = lines.readLine()) {
+                lineNo += 1;
+                String[] args = split(line);
+                if (args == null) {
+                    fail(out, lineNo, "unmatched quote");
+                    failed += 1;
+                    continue;
+                }
+                if (args.length == 0 || args[0].startsWith("#")) {
+                    continue;
+                }
+                if (args[0].equals("batch") || args[0].equals("daemon")) {
+                    fail(out, lineNo, args[0] + " cannot be run in a batch");
+                    failed += 1;
+                    continue;
+                }
+                try {
+                    if (Main.run(repo, args) != 0) {
+                        fail(out, lineNo, args[0] + " failed");
+                        failed += 1;
+                    }
+                } catch (IOException | RuntimeException excp) {
+                    fail(out, lineNo, excp.toString());
+                    failed += 1;
+                }
+                if (args[0].equals("commit") || args[0].equals("merge")) {
+                    Repo.flushStaging();
+                }
+            }
+        } finally {
+            Repo.deferStaging(false);
+            out.flush();
+            System.setOut(stdout);
+        }
+        return failed;
+    }
+
+    /** Reports a failed line on standard error, after the output of the
+     * lines before it.
+     * @param out The buffered standard output.
+     * @param lineNo The line number.
+     * @param why What went wrong.
+     */
+    private static void fail(PrintStream out, int lineNo, String why) {
+        out.flush();
+        System.err.println("line " + lineNo + ": " + why);
+    }
+
+    /** The words of LINE.
+     * @param line A command line.
+     * @return Returns the words, or null if a quote is not closed.
+     */
+    static String[] split(String line) {
+        List<String> words = new ArrayList<>();
+        StringBuilder word = null;
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i += 1) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"') {
+                    quoted = false;
+                } else if (c == '\\' && i + 1 < line.length()) {
+                    i += 1;
+                    word.append(line.charAt(i));
+                } else {
+                    word.append(c);
+                }
+            } else if (Character.isWhitespace(c)) {
+                if (word != null) {
+                    words.add(word.toString());
+                    word = null;
+                }
+            } else {
+                if (word == null) {
+                    word = new StringBuilder();
+                }
+                if (c == '"') {
+                    quoted = true;
+                } else {
+                    word.append(c);
+                }
+            }
+        }
+        if (quoted) {
+            return null;
+        }
+        if (word != null) {
+            words.add(word.toString());
+        }
+        return words.toArray(new String[0]);
+    }
+}
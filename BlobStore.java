@@ -0,0 +1,403 @@
+package gitlet;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * BlobStore class for Gitlet, the tiny stupid version-control system.
+ * Blobs are named by the SHA-1 of their contents alone, so the same
+ * contents under two names are stored once, and are kept deflated
+ * behind a one-byte format tag. Files of at least the raw size are
+ * stored uncompressed instead, so that checking them out copies file to
+ * file in the kernel without passing through the heap. Blobs from older
+ * repositories are named by the hash of their contents followed by the
+ * hash of their file name and are stored raw, untagged; they are still
+ * read, and migrate rewrites them. When delta depth is positive, a new
+ * version of a file may instead be stored as a delta against the
+ * version it replaces, as long as that base is at most depth - 1 deltas
+ * away from a whole blob.
+ *
+ * @author Erin Bhan
+ */
+class BlobStore {
+
+    /** Tag of a deflated blob.*/
+    static final int DEFLATED = 'Z';
+    /** Tag of a deflated delta against another blob.*/
+    static final int DELTA = 'D';
+    /** Tag of an uncompressed blob.*/
+    static final int RAW = 'R';
+    /** Default smallest file stored uncompressed.*/
+    static final int RAW_SIZE = 1 << 20;
+    /** Largest file that is considered for delta storage.*/
+    private static final long DELTA_LIMIT = 1 << 24;
+    /** Total size of the reconstructed blobs kept in the cache.*/
+    private static final long CACHE_LIMIT = 1 << 26;
+    /** Length of a blob id from an older repository.*/
+    private static final int LEGACY_LENGTH = 2 * Utils.UID_LENGTH;
+
+    /** The directory of loose blobs.*/
+    private final File dir;
+    /** The pack of blobs.*/
+    private final Pack pack;
+    /** Longest chain of deltas allowed; 0 stores every blob whole.*/
+    private final int maxDepth;
+    /** Smallest file stored uncompressed; 0 or less compresses all.*/
+    private final long rawSize;
+    /** Recently reconstructed delta bases, least recently used first.*/
+    private final LinkedHashMap<String, byte[]> cache =
+            new LinkedHashMap<>(16, 0.75f, true);
+    /** Total size of the cached blobs.*/
+    private long cached;
+
+    /** A blob store.
+     * @param dir1 The directory of loose blobs.
+     * @param pack1 The pack of blobs.
+     * @param depth The longest chain of deltas allowed.
+     * @param rawSize1 The smallest file stored uncompressed.
+     */
+    BlobStore(File dir1, Pack pack1, int depth, long rawSize1) {
+        dir = dir1;
+        pack = pack1;
+        maxDepth = depth;
+        rawSize = rawSize1;
+    }
+
+    /** The content id of a blob: the SHA-1 of its contents. Ids from
+     * older repositories start with it.
+     * @param id The blob id.
+     * @return Returns the content id.
+     */
+    static String contentId(String id) {
+        return id.length() == LEGACY_LENGTH
+                ? id.substring(0, Utils.UID_LENGTH) : id;
+    }
+
+    /** Whether a blob is stored, loose or packed.
+     * @param id The blob id.
+     * @return true if the blob can be read.
+     */
+    boolean contains(String id) {
+        if (Utils.join(dir, id + ".txt").exists() || pack.contains(id)) {
+            return true;
+        }
+        return id.length() == LEGACY_LENGTH && contains(contentId(id));
+    }
+
+    /** Stores the contents of IN in one pass, hashing and deflating
+     * them as they are read.
+     * @param in The contents.
+     * @return Returns the new blob's id.
+     */
+    String write(InputStream in) throws IOException {
+        return write(in, false);
+    }
+
+    /** Stores the contents of IN in one pass, hashing and, unless RAW1,
+     * deflating them as they are read.
+     * @param in The contents.
+     * @param raw1 Whether to store the contents uncompressed.
+     * @return Returns the new blob's id.
+     */
+    private String write(InputStream in, boolean raw1) throws IOException {
+        File tmp = File.createTempFile("blob", ".tmp", dir);
+        String id;
+        try (OutputStream out = new FileOutputStream(tmp)) {
+            if (raw1) {
+                out.write(RAW);
+                id = Utils.sha1(in, out);
+            } else {
+                out.write(DEFLATED);
+                DeflaterOutputStream z = new DeflaterOutputStream(out);
+                id = Utils.sha1(in, z);
+                z.finish();
+            }
+        }
+        Stats.add(Stats.Counter.BYTES_WRITTEN, tmp.length());
+        if (contains(id)) {
+            tmp.delete();
+        } else {
+            Files.move(tmp.toPath(), Utils.join(dir, id + ".txt").toPath(),
+                    StandardCopyOption.REPLACE_EXISTING);
+        }
+        return id;
+    }
+
+    /** Stores CONTENTS.
+     * @param contents The contents.
+     * @return Returns the new blob's id.
+     */
+    String write(byte[] contents) throws IOException {
+        return write(new ByteArrayInputStream(contents));
+    }
+
+    /** Stores the contents of FILE, as a delta against BASE if deltas
+     * are enabled and the delta is less than half the size of the file.
+     * Files too large for deltas are streamed, and files of at least the
+     * raw size are stored uncompressed.
+     * @param file The file.
+     * @param base The blob of the version FILE replaces, or null.
+     * @return Returns the new blob's id.
+     */
+    String write(File file, String base) throws IOException {
+        boolean raw1 = rawSize > 0 && file.length() >= rawSize;
+        if (raw1 || maxDepth <= 0 || base == null
+                || file.length() > DELTA_LIMIT || !contains(base)) {
+            Stats.add(Stats.Counter.BYTES_READ, file.length());
+            try (InputStream in = new FileInputStream(file)) {
+                return write(in, raw1);
+            }
+        }
+        byte[] contents = Utils.readContents(file);
+        String id = Utils.sha1(contents);
+        if (contains(id)) {
+            return id;
+        }
+        int depth = depth(base) + 1;
+        if (depth <= maxDepth) {
+            byte[] delta = Delta.create(read(base), contents);
+            if (delta.length < contents.length / 2) {
+                File tmp = File.createTempFile("blob", ".tmp", dir);
+                try (OutputStream out = new FileOutputStream(tmp)) {
+                    out.write(DELTA);
+                    DataOutputStream z = new DataOutputStream(
+                            new DeflaterOutputStream(out));
+                    z.writeUTF(base);
+                    z.writeInt(depth);
+                    z.write(delta);
+                    z.close();
+                }
+                Stats.add(Stats.Counter.BYTES_WRITTEN, tmp.length());
+                Files.move(tmp.toPath(),
+                        Utils.join(dir, id + ".txt").toPath(),
+                        StandardCopyOption.REPLACE_EXISTING);
+                return id;
+            }
+        }
+        return write(contents);
+    }
+
+    /** The number of deltas applied to rebuild a blob.
+     * @param id The blob id.
+     * @return Returns 0 for a whole blob.
+     */
+    int depth(String id) throws IOException {
+        try (InputStream in = raw(id)) {
+            if (id.length() == LEGACY_LENGTH || in.read() != DELTA) {
+                return 0;
+            }
+            DataInputStream z =
+                    new DataInputStream(new InflaterInputStream(in));
+            z.readUTF();
+            return z.readInt();
+        }
+    }
+
+    /** Opens a blob for reading, inflating it as it is read.
+     * @param id The blob id.
+     * @return Returns a stream of the blob's contents.
+     */
+    InputStream open(String id) throws IOException {
+        Stats.add(Stats.Counter.BLOB_READS, 1);
+        InputStream in = raw(id);
+        if (id.length() == LEGACY_LENGTH && in != null) {
+            return in;
+        } else if (in == null) {
+            return open(contentId(id));
+        }
+        int tag = in.read();
+        if (tag == DEFLATED) {
+            return new InflaterInputStream(in);
+        } else if (tag == RAW) {
+            return in;
+        } else if (tag == DELTA) {
+            try (DataInputStream z =
+                         new DataInputStream(new InflaterInputStream(in))) {
+                String base = z.readUTF();
+                z.readInt();
+                byte[] baseContents = read(base);
+                remember(base, baseContents);
+                return new ByteArrayInputStream(Delta.apply(baseContents, z));
+            }
+        }
+        in.close();
+        throw Utils.error("Unknown blob format %s.", id);
+    }
+
+    /** Reads a whole blob, from the cache if it was a recent delta base.
+     * @param id The blob id.
+     * @return Returns the blob's contents.
+     */
+    byte[] read(String id) {
+        synchronized (cache) {
+            byte[] hit = cache.get(id);
+            if (hit != null) {
+                return hit;
+            }
+        }
+        try (InputStream in = open(id)) {
+            return in.readAllBytes();
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Writes the contents of a blob to DEST, replacing it. Contents
+     * stored uncompressed are copied by the kernel, file to file, without
+     * passing through the heap; others are streamed through a small
+     * buffer.
+     * @param id The blob id.
+     * @param dest The file to write.
+     * @return Returns the number of bytes written.
+     */
+    long copyTo(String id, File dest) throws IOException {
+        File f = Utils.join(dir, id + ".txt");
+        long n = -1;
+        if (f.exists()) {
+            boolean legacy = id.length() == LEGACY_LENGTH;
+            try (FileChannel src = FileChannel.open(f.toPath())) {
+                if (legacy || tag(src) == RAW) {
+                    int skip = legacy ? 0 : 1;
+                    n = transfer(src, skip, src.size() - skip, dest);
+                }
+            }
+        } else if (pack.contains(id)) {
+            n = pack.transferTo(id, RAW, dest);
+        } else if (id.length() == LEGACY_LENGTH) {
+            return copyTo(contentId(id), dest);
+        }
+        if (n < 0) {
+            try (InputStream in = open(id)) {
+                n = Files.copy(in, dest.toPath(),
+                        StandardCopyOption.REPLACE_EXISTING);
+            }
+        } else {
+            Stats.add(Stats.Counter.BLOB_READS, 1);
+            Stats.add(Stats.Counter.BYTES_READ, n);
+        }
+        Stats.add(Stats.Counter.BYTES_WRITTEN, n);
+        return n;
+    }
+
+    /** The first byte of a loose blob.
+     * @param src The blob's file.
+     * @return Returns the tag, or -1 for an empty file.
+     */
+    private static int tag(FileChannel src) throws IOException {
+        ByteBuffer b = ByteBuffer.allocate(1);
+        return src.read(b, 0) == 1 ? b.get(0) : -1;
+    }
+
+    /** Copies LENGTH bytes of SRC from POSITION into DEST, replacing it.
+     * @param src The source.
+     * @param position Where in SRC to start.
+     * @param length The number of bytes.
+     * @param dest The file to write.
+     * @return Returns LENGTH.
+     */
+    static long transfer(FileChannel src, long position, long length,
+                         File dest) throws IOException {
+        try (FileChannel out = FileChannel.open(dest.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            for (long done = 0; done < length;) {
+                long n = src.transferTo(position + done, length - done, out);
+                if (n <= 0) {
+                    throw new IOException("short copy to " + dest);
+                }
+                done += n;
+            }
+        }
+        return length;
+    }
+
+    /** Opens the stored bytes of a blob.
+     * @param id The blob id.
+     * @return Returns the stream, or null for a migrated legacy blob.
+     */
+    private InputStream raw(String id) throws IOException {
+        File f = Utils.join(dir, id + ".txt");
+        if (f.exists()) {
+            Stats.add(Stats.Counter.BYTES_READ, f.length());
+            return new FileInputStream(f);
+        }
+        InputStream packed = pack.open(id);
+        if (packed != null) {
+            return packed;
+        } else if (id.length() == LEGACY_LENGTH) {
+            return null;
+        }
+        throw Utils.error("Missing blob %s.", id);
+    }
+
+    /** Caches a reconstructed delta base, evicting the least recently
+     * used ones past CACHE_LIMIT bytes.
+     * @param id The blob id.
+     * @param contents The blob's contents.
+     */
+    private void remember(String id, byte[] contents) {
+        synchronized (cache) {
+            if (contents.length > CACHE_LIMIT || cache.containsKey(id)) {
+                return;
+            }
+            cache.put(id, contents);
+            cached += contents.length;
+            Iterator<Map.Entry<String, byte[]>> it =
+                    cache.entrySet().iterator();
+            while (cached > CACHE_LIMIT && it.hasNext()) {
+                cached -= it.next().getValue().length;
+                it.remove();
+            }
+        }
+    }
+
+    /** Rewrites every loose blob from an older repository as a deflated
+     * blob named by its contents alone, and deletes the old file once the
+     * new blob is found to have the content id the old one names. A blob
+     * whose contents do not match is kept as it is. Commits keep the old
+     * ids, which are read through their content ids.
+     * @return Returns the number of blobs migrated.
+     */
+    int migrate() throws IOException {
+        int n = 0;
+        List<String> names = Utils.plainFilenamesIn(dir);
+        for (String name : names) {
+            if (!name.endsWith(".txt")) {
+                continue;
+            }
+            String id = name.substring(0, name.length() - 4);
+            if (id.length() != LEGACY_LENGTH) {
+                continue;
+            }
+            File f = Utils.join(dir, name);
+            String written;
+            try (InputStream in = new FileInputStream(f)) {
+                written = write(in);
+            }
+            if (!written.equals(contentId(id))) {
+                continue;
+            }
+            f.delete();
+            n += 1;
+        }
+        return n;
+    }
+}
@@ -1,7 +1,15 @@
 package gitlet;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
 import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
 import java.util.Date;
 import java.util.LinkedHashMap;
+import java.util.Map;
 /**
  * Commit class for Gitlet, the tiny stupid version-control system.
  *
@@ -9,12 +17,28 @@ import java.util.LinkedHashMap;
  */
 public class Commit implements Serializable {
 
+    /** Serial version of the Java-serialized commits in older
+     * repositories, which decode still has to read.*/
+    private static final long serialVersionUID = 2137337046623435653L;
+
+    /** First bytes of an encoded commit.*/
+    private static final byte[] MAGIC = {'G', 'C'};
+    /** Version of the encoding written by encode, which names a tree.*/
+    private static final int VERSION = 2;
+    /** Version of the encoding that listed every tracked file.*/
+    private static final int FLAT_VERSION = 1;
+    /** First byte of a Java-serialized commit from older repositories.*/
+    private static final byte JAVA_MAGIC = (byte) 0xAC;
+
     /** Commit class message.*/
     private String message;
     /** Commit class timestamp.*/
     private Date timestamp;
-    /** Commit class linkedhashmap.*/
+    /** Commit class linkedhashmap; null for a commit with a tree.*/
     private LinkedHashMap<String, String> track;
+    /** Id of the root tree, or null for a commit stored with its files
+     * listed.*/
+    private String tree;
     /** Commit class parent.*/
     private String parent;
     /** Commit class parent2.*/
@@ -41,6 +65,100 @@ public class Commit implements Serializable {
         track = new LinkedHashMap<>();
     }
 
+    /** Encodes this commit canonically: message, timestamp, parents and
+     * root tree, which must have been set. The commit id is the SHA-1 of
+     * these bytes.
+     * @return Returns the encoded commit.
+     * */
+    public byte[] encode() {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.write(MAGIC);
+            out.writeByte(VERSION);
+            writeString(out, message);
+            out.writeLong(timestamp.getTime());
+            out.writeByte(parent2 != null ? 2 : parent != null ? 1 : 0);
+            if (parent != null) {
+                writeString(out, parent);
+            }
+            if (parent2 != null) {
+                writeString(out, parent2);
+            }
+            if (tree == null) {
+                throw Utils.error("Commit has no tree.");
+            }
+            writeString(out, tree);
+            out.close();
+            return bytes.toByteArray();
+        } catch (IOException excp) {
+            throw Utils.error("Internal error serializing commit.");
+        }
+    }
+
+    /** Decodes a commit written by encode, by the encoding that listed
+     * every file, or by Java serialization in repositories made before
+     * the binary encodings.
+     * @param bytes The stored commit.
+     * @return Returns the commit.
+     * */
+    public static Commit decode(byte[] bytes) {
+        if (bytes.length > 0 && bytes[0] == JAVA_MAGIC) {
+            return Utils.deserialize(bytes, Commit.class);
+        }
+        try {
+            DataInputStream in =
+                    new DataInputStream(new ByteArrayInputStream(bytes));
+            if (in.readByte() != MAGIC[0] || in.readByte() != MAGIC[1]) {
+                throw Utils.error("Unknown commit format.");
+            }
+            int version = in.readUnsignedByte();
+            if (version != VERSION && version != FLAT_VERSION) {
+                throw Utils.error("Unknown commit format.");
+            }
+            String message1 = readString(in);
+            long time = in.readLong();
+            int parents = in.readUnsignedByte();
+            String p1 = parents > 0 ? readString(in) : null;
+            String p2 = parents > 1 ? readString(in) : null;
+            Commit result = new Commit(message1, p1, p2);
+            result.timestamp = new Date(time);
+            if (version == VERSION) {
+                result.tree = readString(in);
+                result.track = null;
+                return result;
+            }
+            for (int n = in.readInt(); n > 0; n -= 1) {
+                String name = readString(in);
+                result.track.put(name, readString(in));
+            }
+            return result;
+        } catch (IOException excp) {
+            throw Utils.error("Corrupt commit.");
+        }
+    }
+
+    /** Writes a length-prefixed UTF-8 string.
+     * @param out The stream.
+     * @param s The string.
+     * */
+    private static void writeString(DataOutputStream out, String s)
+        throws IOException {
+        byte[] b = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(b.length);
+        out.write(b);
+    }
+
+    /** Reads a string written by writeString.
+     * @param in The stream.
+     * @return Returns the string.
+     * */
+    private static String readString(DataInputStream in) throws IOException {
+        byte[] b = new byte[in.readInt()];
+        in.readFully(b);
+        return new String(b, StandardCharsets.UTF_8);
+    }
+
     /** String for getMessage.
      * @return Returns a message.
      * */
@@ -55,6 +173,13 @@ public class Commit implements Serializable {
         return this.timestamp;
     }
 
+    /** Sets the timestamp.
+     * @param timestamp1 The timestamp.
+     * */
+    void setTimestamp(Date timestamp1) {
+        this.timestamp = timestamp1;
+    }
+
     /** Gets the first parent.
      * @return Returns the first parent.
      * */
@@ -83,33 +208,44 @@ public class Commit implements Serializable {
         this.parent2 = parent2s;
     }
 
-    /** Edits the hash.
-     * @param s The stagingArea.*/
-    public void editHash(StagingArea s) {
-        LinkedHashMap<String, String> addFiles = s.getAddFiles();
-        LinkedHashMap<String, String> rmFiles = s.getRemoveFiles();
-        for (String f : addFiles.keySet()) {
-            track.put(f, addFiles.get(f));
-        }
-        for (String rem : rmFiles.keySet()) {
-            track.remove(rem);
-        }
+    /** The id of the root tree.
+     * @return Returns the id, or null if the files are only listed.
+     * */
+    String getTree() {
+        return tree;
+    }
+
+    /** Sets the root tree, which replaces the tracked files.
+     * @param tree1 The id of the root tree.
+     * */
+    void setTree(String tree1) {
+        tree = tree1;
+        track = null;
     }
 
-    /** Combines the commits.
-     * @param other The other for commit.
+    /** The blob of one tracked file, reading only the trees on its path
+     * if the files have not been read yet.
+     * @param path The file's path.
+     * @return Returns the blob id, or null if the file is not tracked.
      * */
-    public void combine(Commit other) {
-        for (String s: other.track.keySet()) {
-            track.put(s, other.track.get(s));
+    String get(String path) {
+        if (track == null) {
+            return Repo.TREES.lookup(tree, path);
         }
+        return track.get(path);
     }
 
-    /** LinkedHashMap for commits.
-     * @return Returns the track.
+    /** Every tracked file. A commit with a tree flattens it on each
+     * call and keeps nothing, since commits are shared through the commit
+     * cache, which weighs them by their encoding alone; callers that need
+     * the files more than once keep the map themselves.
+     * @return Returns an unmodifiable map of each path to its blob.
      * */
-    public LinkedHashMap<String, String> getHashMap() {
-        return track;
+    public Map<String, String> getHashMap() {
+        if (track == null) {
+            return Collections.unmodifiableMap(Repo.TREES.flatten(tree));
+        }
+        return Collections.unmodifiableMap(track);
     }
 
     /** Gets the branch.
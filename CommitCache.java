@@ -0,0 +1,120 @@
+package gitlet;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * CommitCache class for Gitlet, the tiny stupid version-control system.
+ * Keeps recently decoded commits, least recently used first, so a walk
+ * of the history does not read and decode the same commit twice. Each
+ * commit is weighed by the size of its encoding, and the oldest ones are
+ * dropped once the total passes the limit. Cached commits are shared, so
+ * callers must not change them.
+ *
+ * @author Erin Bhan
+ */
+class CommitCache {
+
+    /** A cached commit and its weight.*/
+    private static class Entry {
+        /** The commit.*/
+        private final Commit commit;
+        /** Size of its encoding in bytes.*/
+        private final int size;
+
+        /** An entry.
+         * @param commit1 The commit.
+         * @param size1 Its weight.
+         */
+        Entry(Commit commit1, int size1) {
+            commit = commit1;
+            size = size1;
+        }
+    }
+
+    /** Most bytes of encoded commits kept.*/
+    private final long limit;
+    /** Cached commits by id, least recently used first.*/
+    private final LinkedHashMap<String, Entry> entries =
+            new LinkedHashMap<>(64, 0.75f, true);
+    /** Total weight of the cached commits.*/
+    private long cached;
+    /** Number of lookups found in the cache.*/
+    private long hits;
+    /** Number of lookups that had to read the commit.*/
+    private long misses;
+
+    /** A cache holding up to LIMIT bytes of encoded commits.
+     * @param limit1 The limit; 0 disables the cache.
+     */
+    CommitCache(long limit1) {
+        limit = limit1;
+    }
+
+    /** The commit named ID, reading its encoding with READ on a miss.
+     * @param id The commit id.
+     * @param read Reads the encoded commit.
+     * @return Returns the decoded commit.
+     */
+    Commit get(String id, Function<String, byte[]> read) {
+        synchronized (this) {
+            Entry e = entries.get(id);
+            if (e != null) {
+                hits += 1;
+                Stats.add(Stats.Counter.COMMIT_CACHE_HITS, 1);
+                return e.commit;
+            }
+            misses += 1;
+        }
+        Stats.add(Stats.Counter.COMMIT_CACHE_MISSES, 1);
+        Stats.Timer t = Stats.time(Stats.Phase.OBJECTS);
+        try {
+            byte[] encoded = read.apply(id);
+            Commit c = Commit.decode(encoded);
+            put(id, c, encoded.length);
+            return c;
+        } finally {
+            t.end();
+        }
+    }
+
+    /** Caches commit C, named ID, whose encoding is SIZE bytes.
+     * @param id The commit id.
+     * @param c The commit.
+     * @param size The weight.
+     */
+    synchronized void put(String id, Commit c, int size) {
+        if (size > limit || entries.containsKey(id)) {
+            return;
+        }
+        entries.put(id, new Entry(c, size));
+        cached += size;
+        Iterator<Map.Entry<String, Entry>> it = entries.entrySet().iterator();
+        while (cached > limit && it.hasNext()) {
+            cached -= it.next().getValue().size;
+            it.remove();
+        }
+    }
+
+    /** The number of lookups found in the cache.
+     * @return Returns the hit count.
+     */
+    synchronized long hits() {
+        return hits;
+    }
+
+    /** The number of lookups that read the commit.
+     * @return Returns the miss count.
+     */
+    synchronized long misses() {
+        return misses;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("Commit cache: %d hits, %d misses, %d commits, "
+                + "%d bytes.", hits, misses, entries.size(), cached);
+    }
+}
@@ -0,0 +1,556 @@
+package gitlet;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * CommitGraph class for Gitlet, the tiny stupid version-control system.
+ * The commit graph is a file with one fixed-width record per commit: its
+ * id, the record numbers of its parents and its generation number (one
+ * more than the largest generation of its parents). Records are
+ * appended as commits are made, so parents always come before their
+ * children. Ahead of the records is a table of the record numbers
+ * ordered by id, which covers all but the newest records; lookups
+ * binary search the mapped table and scan the newest records, and the
+ * table is written again once more than TAIL_LIMIT records are past it.
+ *
+ * @author Erin Bhan
+ */
+class CommitGraph {
+
+    /** Magic number at the start of the file.*/
+    private static final int MAGIC = 0x47434752;
+    /** Size of the file header: magic, version and table size.*/
+    private static final int HEADER = 12;
+    /** Version of the file format.*/
+    private static final int VERSION = 2;
+    /** Version of the format without a table, whose records start right
+     * after the magic and version.*/
+    private static final int OLD_VERSION = 1;
+    /** Length of a commit id.*/
+    private static final int ID = Utils.UID_LENGTH;
+    /** Size of one record: id, two parents and generation.*/
+    private static final int RECORD = ID + 4 + 4 + 4;
+    /** Number of records past the table that triggers writing it
+     * again.*/
+    private static final int TAIL_LIMIT = 1024;
+    /** Size of the buffer used to write the file.*/
+    private static final int CHUNK = 1 << 16;
+
+    /** The graph file.*/
+    private final File file;
+    /** The mapped file.*/
+    private ByteBuffer map;
+    /** Number of records in the mapped file.*/
+    private int count;
+    /** Number of records in the table ordered by id.*/
+    private int sorted;
+    /** Offset in the mapped file of the first record.*/
+    private int base;
+    /** Records appended by this process since the file was mapped.*/
+    private ByteBuffer added = ByteBuffer.allocate(0);
+    /** Number of records in ADDED.*/
+    private int addedCount;
+    /** Identity of the graph file when it was last mapped or written.*/
+    private Object key;
+    /** Modification time of the graph file when it was last mapped or
+     * written.*/
+    private long mtime;
+
+    /** The commit graph stored in FILE.
+     * @param file1 The graph file.
+     */
+    CommitGraph(File file1) {
+        file = file1;
+        map();
+    }
+
+    /** Number of commits in the graph.
+     * @return Returns the count.
+     */
+    int size() {
+        return count + addedCount;
+    }
+
+    /** Finds the record of a commit. The records past the table are
+     * scanned from the newest back, since the commits asked about are
+     * nearly always recent, and then the table is binary searched.
+     * @param id The commit id.
+     * @return The record number, or -1 if the commit is not in the graph.
+     */
+    int indexOf(String id) {
+        byte[] k = id.getBytes(StandardCharsets.US_ASCII);
+        if (k.length != ID) {
+            return -1;
+        }
+        for (int i = size() - 1; i >= sorted; i -= 1) {
+            if (compareAt(i, k) == 0) {
+                return i;
+            }
+        }
+        int lo = 0;
+        int hi = sorted - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int i = map.getInt(HEADER + 4 * mid);
+            int c = compareAt(i, k);
+            if (c < 0) {
+                lo = mid + 1;
+            } else if (c > 0) {
+                hi = mid - 1;
+            } else {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /** The id of record I.
+     * @param i The record number.
+     * @return Returns the commit id.
+     */
+    String idAt(int i) {
+        byte[] k = new byte[ID];
+        buffer(i).get(offset(i), k);
+        return new String(k, StandardCharsets.US_ASCII);
+    }
+
+    /** A parent of record I.
+     * @param i The record number.
+     * @param k 0 for the first parent, 1 for the second.
+     * @return The parent's record number, or -1 if there is none.
+     */
+    int parent(int i, int k) {
+        return buffer(i).getInt(offset(i) + ID + 4 * k);
+    }
+
+    /** The generation number of record I.
+     * @param i The record number.
+     * @return Returns the generation.
+     */
+    int generation(int i) {
+        return buffer(i).getInt(offset(i) + ID + 8);
+    }
+
+    /** Appends a commit whose parents are already in the graph. The
+     * record is kept in memory too, so the file is not mapped again
+     * unless another process wrote to it or the table is rewritten.
+     * @param id The commit id.
+     * @param parent1 The first parent id, or null.
+     * @param parent2 The second parent id, or null.
+     */
+    void append(String id, String parent1, String parent2) {
+        refresh();
+        int p1 = parent1 == null ? -1 : indexOf(parent1);
+        int p2 = parent2 == null ? -1 : indexOf(parent2);
+        int gen = 1;
+        if (p1 >= 0) {
+            gen = Math.max(gen, generation(p1) + 1);
+        }
+        if (p2 >= 0) {
+            gen = Math.max(gen, generation(p2) + 1);
+        }
+        ByteBuffer rec = ByteBuffer.allocate(RECORD);
+        rec.put(id.getBytes(StandardCharsets.US_ASCII));
+        rec.putInt(p1).putInt(p2).putInt(gen);
+        boolean fresh = !file.exists() || file.length() == 0;
+        try (FileOutputStream out = new FileOutputStream(file, true)) {
+            if (fresh) {
+                out.write(ByteBuffer.allocate(HEADER).putInt(MAGIC)
+                        .putInt(VERSION).putInt(0).array());
+                base = HEADER;
+            }
+            out.write(rec.array());
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        if (added.capacity() < (addedCount + 1) * RECORD) {
+            ByteBuffer bigger = ByteBuffer.allocate(
+                    Math.max(2 * added.capacity(), 64 * RECORD));
+            bigger.put(0, added, 0, addedCount * RECORD);
+            added = bigger;
+        }
+        added.put(addedCount * RECORD, rec.array());
+        addedCount += 1;
+        stamp();
+        if (size() - sorted > TAIL_LIMIT) {
+            sortTail();
+        }
+    }
+
+    /** Catches up with records that another process appended, and
+     * starts over if it rewrote the file.*/
+    void refresh() {
+        BasicFileAttributes a = attributes();
+        if (a == null) {
+            if (size() > 0) {
+                map();
+            }
+            return;
+        }
+        long expected = base + (long) size() * RECORD;
+        boolean same = key != null && key.equals(a.fileKey());
+        if (same && a.size() == expected
+                && a.lastModifiedTime().toMillis() == mtime) {
+            return;
+        }
+        map();
+    }
+
+    /** Finds a best common ancestor of records A and B. Commits are
+     * visited newest generation first from both sides, so the first
+     * commit reached from both is a common ancestor that no other
+     * common ancestor descends from, and nothing older is visited.
+     * Since record numbers are dense, which side reached each commit is
+     * kept in bitsets, and a parent is queued at most once: all of its
+     * children have larger generations and are visited before it.
+     * @param a The first record number.
+     * @param b The second record number.
+     * @return The record number of the merge base, or -1 if none.
+     */
+    int mergeBase(int a, int b) {
+        BitSet fromA = new BitSet(size());
+        BitSet fromB = new BitSet(size());
+        BitSet queued = new BitSet(size());
+        PriorityQueue<Integer> queue = new PriorityQueue<>((x, y) -> {
+            int c = Integer.compare(generation(y), generation(x));
+            return c != 0 ? c : Integer.compare(y, x);
+        });
+        fromA.set(a);
+        fromB.set(b);
+        queue.add(a);
+        queued.set(a);
+        if (!queued.get(b)) {
+            queue.add(b);
+            queued.set(b);
+        }
+        while (!queue.isEmpty()) {
+            int i = queue.poll();
+            boolean inA = fromA.get(i);
+            boolean inB = fromB.get(i);
+            if (inA && inB) {
+                return i;
+            }
+            for (int k = 0; k < 2; k += 1) {
+                int p = parent(i, k);
+                if (p < 0) {
+                    continue;
+                }
+                if (inA) {
+                    fromA.set(p);
+                }
+                if (inB) {
+                    fromB.set(p);
+                }
+                if (!queued.get(p)) {
+                    queued.set(p);
+                    queue.add(p);
+                }
+            }
+        }
+        return -1;
+    }
+
+    /** Whether record A is an ancestor of (or equal to) record B. Only
+     * commits whose generation is at least A's are visited.
+     * @param a The possible ancestor.
+     * @param b The descendant.
+     * @return true if A is reachable from B.
+     */
+    boolean isAncestor(int a, int b) {
+        int min = generation(a);
+        BitSet seen = new BitSet(size());
+        ArrayDeque<Integer> stack = new ArrayDeque<>();
+        stack.push(b);
+        while (!stack.isEmpty()) {
+            int i = stack.pop();
+            if (i == a) {
+                return true;
+            }
+            if (seen.get(i) || generation(i) <= min) {
+                continue;
+            }
+            seen.set(i);
+            for (int k = 0; k < 2; k += 1) {
+                int p = parent(i, k);
+                if (p >= 0 && !seen.get(p)) {
+                    stack.push(p);
+                }
+            }
+        }
+        return false;
+    }
+
+    /** Replaces the graph in FILE with the commits of ORDER, which must
+     * list every parent before its children.
+     * @param dest The graph file.
+     * @param order The commit ids.
+     * @param parents The parent ids of each commit; missing ones are null.
+     */
+    static void write(File dest, List<String> order,
+                      Map<String, String[]> parents) {
+        HashMap<String, Integer> index = new HashMap<>();
+        try (Writer out = new Writer(dest)) {
+            for (String id : order) {
+                int[] ps = {-1, -1};
+                String[] names = parents.get(id);
+                for (int k = 0; k < names.length; k += 1) {
+                    if (names[k] != null) {
+                        ps[k] = index.getOrDefault(names[k], -1);
+                    }
+                }
+                index.put(id, out.append(id, ps[0], ps[1]));
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Writes a new graph file one record at a time, for callers that
+     * already know the record number of each parent. Records are kept in
+     * memory until the writer is closed, when they are written after the
+     * table ordering them by id, and the file replaces the old one.*/
+    static class Writer implements Closeable {
+        /** The graph file.*/
+        private final File dest;
+        /** The records written.*/
+        private ByteBuffer records = ByteBuffer.allocate(1024 * RECORD);
+        /** Number of records written.*/
+        private int size;
+
+        /** A writer replacing the graph in DEST.
+         * @param dest1 The graph file.
+         */
+        Writer(File dest1) {
+            dest = dest1;
+        }
+
+        /** Writes the record of commit ID.
+         * @param id The commit id.
+         * @param p1 The record number of its first parent, or -1.
+         * @param p2 The record number of its second parent, or -1.
+         * @return Returns the new record's number.
+         */
+        int append(String id, int p1, int p2) {
+            if (records.capacity() < (size + 1) * RECORD) {
+                ByteBuffer bigger = ByteBuffer.allocate(
+                        2 * records.capacity());
+                bigger.put(0, records, 0, size * RECORD);
+                records = bigger;
+            }
+            int gen = 1 + Math.max(
+                    p1 < 0 ? 0 : records.getInt(p1 * RECORD + ID + 8),
+                    p2 < 0 ? 0 : records.getInt(p2 * RECORD + ID + 8));
+            records.position(size * RECORD);
+            records.put(id.getBytes(StandardCharsets.US_ASCII));
+            records.putInt(p1).putInt(p2).putInt(gen);
+            return size++;
+        }
+
+        @Override
+        public void close() throws IOException {
+            String[] ids = new String[size];
+            byte[] k = new byte[ID];
+            for (int i = 0; i < size; i += 1) {
+                records.get(i * RECORD, k);
+                ids[i] = new String(k, StandardCharsets.US_ASCII);
+            }
+            writeFile(dest, order(ids, 0), records, 0, size,
+                    ByteBuffer.allocate(0), 0);
+        }
+    }
+
+    /** Writes a graph file, which replaces DEST: the table TABLE, then
+     * N1 records from BUF1 starting at AT1 and N2 records from BUF2.
+     * @param dest The graph file.
+     * @param table The record numbers ordered by id.
+     * @param buf1 The first records.
+     * @param at1 Where they start in BUF1.
+     * @param n1 How many there are.
+     * @param buf2 More records.
+     * @param n2 How many there are.
+     */
+    private static void writeFile(File dest, int[] table, ByteBuffer buf1,
+                                  int at1, int n1, ByteBuffer buf2, int n2)
+        throws IOException {
+        File tmp = new File(dest.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(tmp),
+                        CHUNK))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(table.length);
+            for (int r : table) {
+                out.writeInt(r);
+            }
+            byte[] chunk = new byte[CHUNK];
+            copy(buf1, at1, n1 * RECORD, out, chunk);
+            copy(buf2, 0, n2 * RECORD, out, chunk);
+        }
+        Files.move(tmp.toPath(), dest.toPath(),
+                StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /** Writes LENGTH bytes of BUF from AT to OUT through CHUNK.
+     * @param buf The bytes.
+     * @param at Where they start.
+     * @param length How many there are.
+     * @param out Where they go.
+     * @param chunk A buffer.
+     */
+    private static void copy(ByteBuffer buf, int at, int length,
+                             DataOutputStream out, byte[] chunk)
+        throws IOException {
+        for (int done = 0; done < length; done += chunk.length) {
+            int n = Math.min(chunk.length, length - done);
+            buf.get(at + done, chunk, 0, n);
+            out.write(chunk, 0, n);
+        }
+    }
+
+    /** The numbers of records FROM and on, ordered by their ids.
+     * @param ids The ids of the records.
+     * @param from The number of the first record.
+     * @return Returns the record numbers.
+     */
+    private static int[] order(String[] ids, int from) {
+        Integer[] order = new Integer[ids.length];
+        for (int i = 0; i < ids.length; i += 1) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (x, y) -> ids[x].compareTo(ids[y]));
+        int[] result = new int[ids.length];
+        for (int i = 0; i < ids.length; i += 1) {
+            result[i] = from + order[i];
+        }
+        return result;
+    }
+
+    /** Writes the file again with a table covering every record: the
+     * records past the old table are ordered and merged into it.*/
+    private void sortTail() {
+        String[] ids = new String[size() - sorted];
+        for (int i = 0; i < ids.length; i += 1) {
+            ids[i] = idAt(sorted + i);
+        }
+        int[] fresh = order(ids, sorted);
+        int[] table = new int[size()];
+        int i = 0, j = 0, n = 0;
+        while (n < table.length) {
+            int old = i < sorted ? map.getInt(HEADER + 4 * i) : -1;
+            if (j == fresh.length || old >= 0 && compareAt(old,
+                    ids[fresh[j] - sorted].getBytes(StandardCharsets
+                            .US_ASCII)) < 0) {
+                table[n++] = old;
+                i += 1;
+            } else {
+                table[n++] = fresh[j++];
+            }
+        }
+        try {
+            writeFile(file, table, map, base, count, added, addedCount);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        map();
+    }
+
+    /** Maps the graph file, forgetting the records added since it was
+     * last mapped, which it holds too.*/
+    private void map() {
+        addedCount = 0;
+        added.clear();
+        if (!file.isFile() || file.length() < HEADER) {
+            map = ByteBuffer.allocate(0);
+            count = 0;
+            sorted = 0;
+            base = HEADER;
+            stamp();
+            return;
+        }
+        try (FileChannel ch = FileChannel.open(file.toPath())) {
+            map = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        int version = map.getInt(4);
+        if (map.getInt(0) != MAGIC
+                || version != VERSION && version != OLD_VERSION) {
+            throw Utils.error("Corrupt commit graph.");
+        }
+        sorted = version == VERSION ? map.getInt(8) : 0;
+        base = version == VERSION ? HEADER + 4 * sorted : 8;
+        count = (map.capacity() - base) / RECORD;
+        stamp();
+    }
+
+    /** Compares the id of record I with KEY.
+     * @param i The record number.
+     * @param k The id's bytes.
+     * @return Negative, zero or positive as the id is less than, equal
+     * to or greater than KEY.
+     */
+    private int compareAt(int i, byte[] k) {
+        ByteBuffer b = buffer(i);
+        int at = offset(i);
+        for (int j = 0; j < ID; j += 1) {
+            int c = Byte.compare(b.get(at + j), k[j]);
+            if (c != 0) {
+                return c;
+            }
+        }
+        return 0;
+    }
+
+    /** The buffer holding record I.
+     * @param i The record number.
+     * @return Returns the mapped file or the records added since.
+     */
+    private ByteBuffer buffer(int i) {
+        return i < count ? map : added;
+    }
+
+    /** Where record I starts in its buffer.
+     * @param i The record number.
+     * @return Returns the offset.
+     */
+    private int offset(int i) {
+        return i < count ? base + i * RECORD : (i - count) * RECORD;
+    }
+
+    /** Remembers the identity and modification time of the file.*/
+    private void stamp() {
+        BasicFileAttributes a = attributes();
+        key = a == null ? null : a.fileKey();
+        mtime = a == null ? 0 : a.lastModifiedTime().toMillis();
+    }
+
+    /** The attributes of the graph file.
+     * @return Returns them, or null if there is no file.
+     */
+    private BasicFileAttributes attributes() {
+        try {
+            return Files.readAttributes(file.toPath(),
+                    BasicFileAttributes.class);
+        } catch (IOException excp) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package gitlet;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Properties;
+
+/**
+ * Config class for Gitlet, the tiny stupid version-control system.
+ * Repository settings, kept as key=value lines in .gitlet/config.
+ * A missing file or key means the default.
+ *
+ * @author Erin Bhan
+ */
+class Config {
+
+    /** The config file.*/
+    private final File file;
+    /** The settings, once read.*/
+    private Properties props;
+
+    /** The settings stored in FILE.
+     * @param file1 The config file.
+     */
+    Config(File file1) {
+        file = file1;
+    }
+
+    /** A setting.
+     * @param key The setting's name.
+     * @param dflt The value if it is not set.
+     * @return Returns the value.
+     */
+    String get(String key, String dflt) {
+        return load().getProperty(key, dflt);
+    }
+
+    /** An integer setting.
+     * @param key The setting's name.
+     * @param dflt The value if it is not set or not a number.
+     * @return Returns the value.
+     */
+    int getInt(String key, int dflt) {
+        try {
+            return Integer.parseInt(get(key, Integer.toString(dflt)).trim());
+        } catch (NumberFormatException excp) {
+            return dflt;
+        }
+    }
+
+    /** Changes a setting and saves the file.
+     * @param key The setting's name.
+     * @param value The new value.
+     */
+    void set(String key, String value) {
+        load().setProperty(key, value);
+        try (OutputStream out = new FileOutputStream(file)) {
+            props.store(out, null);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Forgets the settings, so the file is read again on next use.*/
+    void refresh() {
+        props = null;
+    }
+
+    /** Reads the file if it has not been read yet.
+     * @return Returns the settings.
+     */
+    private Properties load() {
+        if (props == null) {
+            props = new Properties();
+            if (file.isFile()) {
+                try (InputStream in = new FileInputStream(file)) {
+                    props.load(in);
+                } catch (IOException excp) {
+                    throw new IllegalArgumentException(excp.getMessage());
+                }
+            }
+        }
+        return props;
+    }
+}
@@ -0,0 +1,220 @@
+package gitlet;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Daemon class for Gitlet, the tiny stupid version-control system.
+ * "gitlet daemon" keeps one process running for the repository in the
+ * current directory, listening on the Unix socket .gitlet/daemon.sock,
+ * so that later commands skip warming up a new JVM. The gitlet-client
+ * script sends each command to the socket and prints what comes back,
+ * without starting a JVM at all; Main does the same when it is run
+ * while the socket exists, which still pays for starting its own JVM.
+ * Commands run one at a time, exactly as they would locally; before
+ * each one the daemon drops whatever other processes may have changed
+ * on disk, keeping decoded commits and blobs, which never change.
+ * "gitlet daemon stop" shuts it down.
+ *
+ * A request is the number of arguments followed by each argument as
+ * modified UTF-8. The reply is a series of frames, each a stream byte
+ * (OUT or ERR), a length and that many bytes, ended by an EXIT byte and
+ * the command's exit status.
+ *
+ * @author Erin Bhan
+ */
+class Daemon {
+
+    /** Frame of standard output.*/
+    private static final int OUT = 1;
+    /** Frame of standard error.*/
+    private static final int ERR = 2;
+    /** Final frame, carrying the exit status.*/
+    private static final int EXIT = 0;
+
+    /** The socket in the repository's .gitlet directory, which honors
+     * gitlet.dir as Repo does, relative to the working directory so that
+     * the path stays within the length limit of socket addresses.*/
+    private static final Path SOCKET = Path.of("").toAbsolutePath()
+            .relativize(Repo.GITLET.toPath().toAbsolutePath())
+            .resolve("daemon.sock");
+
+    /** Writes frames of one stream to a client.*/
+    private static class FrameStream extends OutputStream {
+        /** The connection.*/
+        private final DataOutputStream out;
+        /** OUT or ERR.*/
+        private final int stream;
+
+        /** Frames of STREAM1 written to OUT1.
+         * @param out1 The connection.
+         * @param stream1 The stream byte.
+         */
+        FrameStream(DataOutputStream out1, int stream1) {
+            out = out1;
+            stream = stream1;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] {(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (len > 0) {
+                out.writeByte(stream);
+                out.writeInt(len);
+                out.write(b, off, len);
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            out.flush();
+        }
+    }
+
+    /** Runs the command ARGS on a daemon, if one is running.
+     * @param args The command line.
+     * @return Returns the command's exit status, or -1 if no daemon
+     * answered and the command should run here.
+     */
+    static int forward(String... args) {
+        if (!Files.exists(SOCKET)) {
+            return -1;
+        }
+        SocketChannel ch;
+        try {
+            ch = SocketChannel.open(UnixDomainSocketAddress.of(SOCKET));
+        } catch (IOException excp) {
+            return -1;
+        }
+        try (ch) {
+            DataOutputStream req = new DataOutputStream(
+                    new BufferedOutputStream(Channels.newOutputStream(ch)));
+            req.writeInt(args.length);
+            for (String a : args) {
+                req.writeUTF(a);
+            }
+            req.flush();
+            DataInputStream in = new DataInputStream(
+                    Channels.newInputStream(ch));
+            byte[] buf = new byte[Utils.BUFFER_SIZE];
+            while (true) {
+                int stream = in.readUnsignedByte();
+                if (stream == EXIT) {
+                    System.out.flush();
+                    return in.readInt();
+                }
+                PrintStream to = stream == ERR ? System.err : System.out;
+                for (int len = in.readInt(); len > 0;) {
+                    int n = in.read(buf, 0, Math.min(len, buf.length));
+                    if (n < 0) {
+                        throw new IOException("daemon hung up");
+                    }
+                    to.write(buf, 0, n);
+                    len -= n;
+                }
+            }
+        } catch (IOException excp) {
+            System.err.println("gitlet daemon: " + excp.getMessage());
+            return 1;
+        }
+    }
+
+    /** Serves commands until told to stop.
+     * @param repo The repository.
+     */
+    static void serve(Repo repo) throws IOException {
+        if (Files.exists(SOCKET)) {
+            try {
+                SocketChannel.open(UnixDomainSocketAddress.of(SOCKET))
+                        .close();
+                System.out.println("A daemon is already running.");
+                return;
+            } catch (IOException excp) {
+                Files.delete(SOCKET);
+            }
+        }
+        PrintStream stdout = System.out;
+        PrintStream stderr = System.err;
+        try (ServerSocketChannel server =
+                     ServerSocketChannel.open(StandardProtocolFamily.UNIX)) {
+            server.bind(UnixDomainSocketAddress.of(SOCKET));
+            File sock = SOCKET.toFile();
+            sock.deleteOnExit();
+            stdout.println("Serving " + sock.getAbsolutePath());
+            boolean running = true;
+            while (running) {
+                try (SocketChannel ch = server.accept()) {
+                    running = handle(repo, ch);
+                } catch (IOException excp) {
+                    stderr.println("gitlet daemon: " + excp.getMessage());
+                } finally {
+                    System.setOut(stdout);
+                    System.setErr(stderr);
+                }
+            }
+        } finally {
+            Files.deleteIfExists(SOCKET);
+        }
+    }
+
+    /** Runs one command sent over CH.
+     * @param repo The repository.
+     * @param ch The connection.
+     * @return Returns false if the daemon was told to stop.
+     */
+    private static boolean handle(Repo repo, SocketChannel ch)
+        throws IOException {
+        DataInputStream in = new DataInputStream(Channels.newInputStream(ch));
+        String[] args = new String[in.readInt()];
+        for (int i = 0; i < args.length; i += 1) {
+            args[i] = in.readUTF();
+        }
+        DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(Channels.newOutputStream(ch),
+                        Utils.BUFFER_SIZE));
+        PrintStream cout = new PrintStream(new FrameStream(out, OUT));
+        PrintStream cerr = new PrintStream(new FrameStream(out, ERR));
+        System.setOut(cout);
+        System.setErr(cerr);
+        boolean stop = args.length == 2 && args[0].equals("daemon")
+                && args[1].equals("stop");
+        int status = 0;
+        if (stop) {
+            System.out.println("Daemon stopped.");
+        } else if (args.length > 0 && args[0].equals("daemon")) {
+            System.out.println("A daemon is already running.");
+        } else if (args.length > 0 && args[0].equals("batch")) {
+            System.out.println("Run batch without the daemon.");
+        } else {
+            Repo.refresh();
+            try {
+                status = Main.run(repo, args);
+            } catch (IOException | RuntimeException excp) {
+                cerr.println(excp);
+                status = 1;
+            }
+        }
+        cout.flush();
+        cerr.flush();
+        out.writeByte(EXIT);
+        out.writeInt(status);
+        out.flush();
+        return !stop;
+    }
+}
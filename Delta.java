@@ -0,0 +1,143 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+
+/**
+ * Delta class for Gitlet, the tiny stupid version-control system.
+ * A delta rebuilds a target from a base as a list of instructions,
+ * each either copying a range of the base or inserting new bytes.
+ * Matches are found by indexing every BLOCK-byte block of the base and
+ * looking up a rolling hash of the target.
+ *
+ * @author Erin Bhan
+ */
+class Delta {
+
+    /** Instruction that copies a range of the base.*/
+    private static final int COPY = 0;
+    /** Instruction that inserts literal bytes.*/
+    private static final int INSERT = 1;
+    /** Length of the blocks of the base that are indexed.*/
+    private static final int BLOCK = 16;
+    /** Multiplier of the rolling hash.*/
+    private static final int PRIME = 31;
+
+    /** Writes the instructions that turn BASE into TARGET.
+     * @param base The base contents.
+     * @param target The target contents.
+     * @param out Where the instructions go.
+     */
+    static void create(byte[] base, byte[] target, DataOutputStream out)
+        throws IOException {
+        HashMap<Integer, Integer> blocks = new HashMap<>();
+        for (int i = 0; i + BLOCK <= base.length; i += BLOCK) {
+            blocks.putIfAbsent(hash(base, i), i);
+        }
+        int pow = 1;
+        for (int k = 1; k < BLOCK; k += 1) {
+            pow *= PRIME;
+        }
+        out.writeInt(target.length);
+        int pending = 0;
+        int i = 0;
+        int h = target.length >= BLOCK ? hash(target, 0) : 0;
+        while (i + BLOCK <= target.length) {
+            Integer at = blocks.get(h);
+            int len = 0;
+            if (at != null) {
+                while (at + len < base.length && i + len < target.length
+                        && base[at + len] == target[i + len]) {
+                    len += 1;
+                }
+            }
+            if (len >= BLOCK) {
+                insert(target, pending, i, out);
+                out.writeByte(COPY);
+                out.writeInt(at);
+                out.writeInt(len);
+                i += len;
+                pending = i;
+                if (i + BLOCK <= target.length) {
+                    h = hash(target, i);
+                }
+            } else {
+                if (i + BLOCK < target.length) {
+                    h = (h - target[i] * pow) * PRIME + target[i + BLOCK];
+                }
+                i += 1;
+            }
+        }
+        insert(target, pending, target.length, out);
+    }
+
+    /** Rebuilds a target from BASE and the instructions in IN.
+     * @param base The base contents.
+     * @param in The instructions written by create.
+     * @return Returns the target contents.
+     */
+    static byte[] apply(byte[] base, DataInputStream in) throws IOException {
+        byte[] target = new byte[in.readInt()];
+        int pos = 0;
+        while (pos < target.length) {
+            int op = in.readUnsignedByte();
+            if (op == COPY) {
+                int at = in.readInt();
+                int len = in.readInt();
+                System.arraycopy(base, at, target, pos, len);
+                pos += len;
+            } else if (op == INSERT) {
+                int len = in.readInt();
+                in.readFully(target, pos, len);
+                pos += len;
+            } else {
+                throw Utils.error("Corrupt delta.");
+            }
+        }
+        return target;
+    }
+
+    /** Writes an instruction inserting TARGET[FROM..TO), if not empty.
+     * @param target The target contents.
+     * @param from The first byte.
+     * @param to One past the last byte.
+     * @param out Where the instruction goes.
+     */
+    private static void insert(byte[] target, int from, int to,
+                               DataOutputStream out) throws IOException {
+        if (to > from) {
+            out.writeByte(INSERT);
+            out.writeInt(to - from);
+            out.write(target, from, to - from);
+        }
+    }
+
+    /** The hash of the BLOCK bytes of B starting at I.
+     * @param b The bytes.
+     * @param i The start.
+     * @return Returns the hash.
+     */
+    private static int hash(byte[] b, int i) {
+        int h = 0;
+        for (int k = 0; k < BLOCK; k += 1) {
+            h = h * PRIME + b[i + k];
+        }
+        return h;
+    }
+
+    /** The instructions that turn BASE into TARGET.
+     * @param base The base contents.
+     * @param target The target contents.
+     * @return Returns the encoded instructions.
+     */
+    static byte[] create(byte[] base, byte[] target) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        create(base, target, out);
+        out.close();
+        return bytes.toByteArray();
+    }
+}
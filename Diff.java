@@ -0,0 +1,658 @@
+package gitlet;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * Diff class for Gitlet, the tiny stupid version-control system.
+ * Writes the differences between two versions of a file in unified
+ * format, with three lines of context around each change.
+ *
+ * Lines are compared by a 64-bit hash, so neither version is kept in
+ * memory: each is read once to hash its lines, once alongside the other
+ * to check that the lines paired as the same really are, and once more
+ * to write the hunks. A pair whose hashes collide is a change like any
+ * other. Lines that occur only on one side are
+ * changes whatever else happens, so they are set aside first, as GNU
+ * diff does. The rest are compared by Myers's linear-space algorithm,
+ * which splits the problem at the middle snake of an optimal path and
+ * recurses on the halves, so memory grows with the number of lines, a
+ * few dozen bytes a line at most, and not with the square of it or with
+ * the length of the lines. When a middle snake costs too much to find,
+ * the search stops at the point that got furthest, which bounds the
+ * time taken at the price of an edit script that may not be minimal.
+ *
+ * @author Erin Bhan
+ */
+class Diff {
+
+    /** Lines of context around each change.*/
+    private static final int CONTEXT = 3;
+    /** Size of the buffers of the streams read.*/
+    private static final int BUFFER = 1 << 16;
+    /** Offset basis of the FNV-1a hash.*/
+    private static final long FNV_BASIS = 0xcbf29ce484222325L;
+    /** Prime of the FNV-1a hash.*/
+    private static final long FNV_PRIME = 0x100000001b3L;
+    /** Least number of edits looked for before a middle snake is given
+     * up on.*/
+    static final int MIN_COST = 1024;
+
+    /** One version of a file, which can be read more than once.*/
+    interface Source {
+        /** Opens the version.
+         * @return Returns a stream of its contents.
+         */
+        InputStream open() throws IOException;
+    }
+
+    /** The hashes of the lines of one version.*/
+    private static class Lines {
+        /** Hash of each line.*/
+        private long[] hashes = new long[1024];
+        /** Number of lines.*/
+        private int count;
+
+        /** Adds a line with hash H.
+         * @param h The hash.
+         */
+        void add(long h) {
+            if (count == hashes.length) {
+                hashes = Arrays.copyOf(hashes, count + (count >> 1));
+            }
+            hashes[count] = h;
+            count += 1;
+        }
+    }
+
+    /** Reads one version line by line.*/
+    private static class LineReader implements AutoCloseable {
+        /** The stream, or null for a missing version.*/
+        private final InputStream in;
+        /** Bytes read from IN and not yet used.*/
+        private final byte[] buffer;
+        /** Position of the next byte in BUFFER.*/
+        private int pos;
+        /** Number of bytes in BUFFER.*/
+        private int limit;
+        /** The last line read, without its newline.*/
+        private byte[] line = new byte[256];
+        /** Its length.*/
+        private int length;
+        /** Whether it ended with a newline.*/
+        private boolean newline;
+        /** Number of lines read.*/
+        private int read;
+
+        /** A reader of SOURCE, which may be null.
+         * @param source The version.
+         */
+        LineReader(Source source) throws IOException {
+            in = source == null ? null : source.open();
+            buffer = in == null ? null : new byte[BUFFER];
+        }
+
+        /** Reads the next line.
+         * @return false at the end of the version.
+         */
+        boolean next() throws IOException {
+            if (in == null) {
+                return false;
+            }
+            length = 0;
+            newline = false;
+            while (!newline) {
+                if (pos == limit) {
+                    limit = Math.max(0, in.read(buffer));
+                    pos = 0;
+                    if (limit == 0) {
+                        break;
+                    }
+                }
+                int end = pos;
+                while (end < limit && buffer[end] != '\n') {
+                    end += 1;
+                }
+                if (length + end - pos > line.length) {
+                    line = Arrays.copyOf(line,
+                            Math.max(2 * line.length, length + end - pos));
+                }
+                System.arraycopy(buffer, pos, line, length, end - pos);
+                length += end - pos;
+                newline = end < limit;
+                pos = newline ? end + 1 : end;
+            }
+            if (!newline && length == 0) {
+                return false;
+            }
+            read += 1;
+            return true;
+        }
+
+        /** Whether the last line read is the last line read by R.
+         * @param r The other reader.
+         * @return true if the lines and their newlines are the same.
+         */
+        boolean same(LineReader r) {
+            return newline == r.newline
+                    && Arrays.equals(line, 0, length, r.line, 0, r.length);
+        }
+
+        /** The hash of the last line read, which also tells a last line
+         * without a newline from the same line with one.
+         * @return Returns its FNV-1a hash.
+         */
+        long hash() {
+            long h = FNV_BASIS;
+            for (int i = 0; i < length; i += 1) {
+                h = (h ^ (line[i] & 0xff)) * FNV_PRIME;
+            }
+            return newline ? h : (h ^ 0x100) * FNV_PRIME;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (in != null) {
+                in.close();
+            }
+        }
+    }
+
+    /** Where the output goes.*/
+    private final OutputStream out;
+    /** Least number of edits looked for before a middle snake is given
+     * up on.*/
+    private final int minCost;
+    /** Bits of the line hashes that are kept.*/
+    private final long hashMask;
+    /** The changed regions found: start and end in the first version,
+     * then in the second, for each region, in order.*/
+    private int[] edits = new int[64];
+    /** Number of ints of EDITS used.*/
+    private int used;
+    /** Furthest reaching paths forward, by diagonal.*/
+    private int[] forward;
+    /** Furthest reaching paths backward, by diagonal.*/
+    private int[] backward;
+    /** Lines of the first version that are changed.*/
+    private BitSet changedA;
+    /** Lines of the second version that are changed.*/
+    private BitSet changedB;
+    /** Line of the first version that each line compared is.*/
+    private int[] mapA;
+    /** Line of the second version that each line compared is.*/
+    private int[] mapB;
+    /** Most edits looked for before a middle snake is given up on.*/
+    private int maxCost;
+    /** X of the point found by middle, relative to its start.*/
+    private int splitX;
+    /** Y of the point found by middle, relative to its start.*/
+    private int splitY;
+
+    /** A diff writing to OUT1.
+     * @param out1 The output.
+     */
+    Diff(OutputStream out1) {
+        this(out1, MIN_COST, -1L);
+    }
+
+    /** A diff writing to OUT1 that gives up on a middle snake after
+     * MINCOST1 edits on small files, and keeps only the bits of HASHMASK1
+     * of each line hash. Tests use it to reach the cost limit and to
+     * make hashes collide.
+     * @param out1 The output.
+     * @param minCost1 The least number of edits looked for.
+     * @param hashMask1 The hash bits kept.
+     */
+    Diff(OutputStream out1, int minCost1, long hashMask1) {
+        out = out1;
+        minCost = minCost1;
+        hashMask = hashMask1;
+    }
+
+    /** Writes the differences between two versions of the file NAME.
+     * Writes nothing if they have the same lines.
+     * @param name The file's path.
+     * @param before The first version, or null if there was no file.
+     * @param after The second version, or null if there is no file.
+     */
+    void file(String name, Source before, Source after) throws IOException {
+        Lines a = hash(before);
+        Lines b = hash(after);
+        int n = a.count;
+        int m = b.count;
+        changedA = new BitSet(n);
+        changedB = new BitSet(m);
+        unique(a, b, changedA);
+        unique(b, a, changedB);
+        mapA = compact(a, changedA);
+        mapB = compact(b, changedB);
+        maxCost = 1;
+        for (int diags = a.count + b.count + 3; diags != 0; diags >>= 2) {
+            maxCost <<= 1;
+        }
+        maxCost = Math.max(minCost, maxCost);
+        if (forward == null || forward.length < 2 * maxCost + 3) {
+            forward = new int[2 * maxCost + 3];
+            backward = new int[2 * maxCost + 3];
+        }
+        compare(a.hashes, 0, a.count, b.hashes, 0, b.count);
+        verify(before, after, n, m);
+        script(n, m);
+        if (used == 0 && (before == null) == (after == null)) {
+            return;
+        }
+        write("diff --gitlet a/" + name + " b/" + name + "\n");
+        write("--- " + (before == null ? "/dev/null" : "a/" + name) + "\n");
+        write("+++ " + (after == null ? "/dev/null" : "b/" + name) + "\n");
+        try (LineReader x = new LineReader(before);
+             LineReader y = new LineReader(after)) {
+            for (int i = 0; i < used; ) {
+                int j = i + 4;
+                while (j < used && edits[j] - edits[j - 3] <= 2 * CONTEXT) {
+                    j += 4;
+                }
+                hunk(x, y, i, j, n);
+                i = j;
+            }
+        }
+    }
+
+    /** Reads the versions BEFORE and AFTER, of N and M lines, alongside
+     * each other, and marks each pair of lines left unchanged whose
+     * contents differ as changed on both sides. The unchanged lines of the
+     * two pair off in order.
+     * @param before The first version.
+     * @param after The second version.
+     * @param n The number of lines of the first version.
+     * @param m The number of lines of the second version.
+     */
+    private void verify(Source before, Source after, int n, int m)
+        throws IOException {
+        if (changedA.cardinality() == n || changedB.cardinality() == m) {
+            return;
+        }
+        try (LineReader x = new LineReader(before);
+             LineReader y = new LineReader(after)) {
+            int i = 0;
+            int j = 0;
+            while (i < n && j < m) {
+                if (changedA.get(i)) {
+                    x.next();
+                    i += 1;
+                } else if (changedB.get(j)) {
+                    y.next();
+                    j += 1;
+                } else {
+                    x.next();
+                    y.next();
+                    if (!x.same(y)) {
+                        changedA.set(i);
+                        changedB.set(j);
+                    }
+                    i += 1;
+                    j += 1;
+                }
+            }
+        }
+    }
+
+    /** Marks the lines of X that occur nowhere in Y as changed.
+     * @param x The hashes of one version.
+     * @param y The hashes of the other.
+     * @param changed The changed lines of X.
+     */
+    private static void unique(Lines x, Lines y, BitSet changed) {
+        long[] sorted = Arrays.copyOf(y.hashes, y.count);
+        Arrays.sort(sorted);
+        for (int i = 0; i < x.count; i += 1) {
+            if (Arrays.binarySearch(sorted, x.hashes[i]) < 0) {
+                changed.set(i);
+            }
+        }
+    }
+
+    /** Drops the lines of X marked as changed, leaving the rest to be
+     * compared.
+     * @param x The hashes of one version, which are compacted.
+     * @param changed Its changed lines.
+     * @return Returns the line each line left had before.
+     */
+    private static int[] compact(Lines x, BitSet changed) {
+        int[] map = new int[x.count - changed.cardinality()];
+        int k = 0;
+        for (int i = 0; i < x.count; i += 1) {
+            if (!changed.get(i)) {
+                x.hashes[k] = x.hashes[i];
+                map[k] = i;
+                k += 1;
+            }
+        }
+        x.count = k;
+        return map;
+    }
+
+    /** Turns the changed lines of versions of N and M lines into the
+     * regions of EDITS. The unchanged lines of the two are the same
+     * lines in the same order, so they pair off.
+     * @param n The number of lines of the first version.
+     * @param m The number of lines of the second version.
+     */
+    private void script(int n, int m) {
+        used = 0;
+        int i = 0;
+        int j = 0;
+        while (i < n || j < m) {
+            if (i < n && j < m && !changedA.get(i) && !changedB.get(j)) {
+                i += 1;
+                j += 1;
+                continue;
+            }
+            int i0 = i;
+            int j0 = j;
+            i = changedA.nextClearBit(i);
+            j = changedB.nextClearBit(j);
+            record(i0, i, j0, j);
+        }
+    }
+
+    /** Writes one hunk, covering the regions of EDITS from FROM to TO.
+     * @param x The reader of the first version.
+     * @param y The reader of the second version.
+     * @param from The index of the first region in EDITS.
+     * @param to The index after the last region.
+     * @param n The number of lines of the first version.
+     */
+    private void hunk(LineReader x, LineReader y, int from, int to, int n)
+        throws IOException {
+        int aStart = Math.max(0, edits[from] - CONTEXT);
+        int aEnd = Math.min(n, edits[to - 3] + CONTEXT);
+        int bStart = edits[from + 2] - (edits[from] - aStart);
+        int bEnd = edits[to - 1] + (aEnd - edits[to - 3]);
+        write("@@ -" + range(aStart, aEnd - aStart) + " +"
+                + range(bStart, bEnd - bStart) + " @@\n");
+        skip(x, aStart);
+        skip(y, bStart);
+        for (int i = from; i < to; i += 4) {
+            while (x.read < edits[i]) {
+                x.next();
+                y.next();
+                line(' ', x);
+            }
+            while (x.read < edits[i + 1]) {
+                x.next();
+                line('-', x);
+            }
+            while (y.read < edits[i + 3]) {
+                y.next();
+                line('+', y);
+            }
+        }
+        while (x.read < aEnd) {
+            x.next();
+            y.next();
+            line(' ', x);
+        }
+    }
+
+    /** The range of a hunk header.
+     * @param start The first line, counting from 0.
+     * @param count The number of lines.
+     * @return Returns the range as unified diffs write it.
+     */
+    private static String range(int start, int count) {
+        if (count == 1) {
+            return String.valueOf(start + 1);
+        }
+        return (count == 0 ? start : start + 1) + "," + count;
+    }
+
+    /** Reads R up to line LINE.
+     * @param r The reader.
+     * @param line The number of lines it should have read.
+     */
+    private static void skip(LineReader r, int line) throws IOException {
+        while (r.read < line && r.next()) {
+            continue;
+        }
+    }
+
+    /** Writes the last line read by R, marked with MARK.
+     * @param mark One of ' ', '-' or '+'.
+     * @param r The reader.
+     */
+    private void line(char mark, LineReader r) throws IOException {
+        out.write(mark);
+        out.write(r.line, 0, r.length);
+        out.write('\n');
+        if (!r.newline) {
+            write("\\ No newline at end of file\n");
+        }
+    }
+
+    /** Writes S.
+     * @param s The text.
+     */
+    private void write(String s) throws IOException {
+        out.write(s.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /** The hashes of the lines of SOURCE.
+     * @param source The version, or null.
+     * @return Returns the hashes.
+     */
+    private Lines hash(Source source) throws IOException {
+        Lines result = new Lines();
+        try (LineReader r = new LineReader(source)) {
+            while (r.next()) {
+                result.add(r.hash() & hashMask);
+            }
+        }
+        return result;
+    }
+
+    /** Marks the lines that differ between A[AFROM..ATO) and
+     * B[BFROM..BTO) as changed.
+     * @param a The hashes of the first version.
+     * @param aFrom The first line compared.
+     * @param aTo The line after the last.
+     * @param b The hashes of the second version.
+     * @param bFrom The first line compared.
+     * @param bTo The line after the last.
+     */
+    private void compare(long[] a, int aFrom, int aTo, long[] b, int bFrom,
+                         int bTo) {
+        while (aFrom < aTo && bFrom < bTo && a[aFrom] == b[bFrom]) {
+            aFrom += 1;
+            bFrom += 1;
+        }
+        while (aFrom < aTo && bFrom < bTo && a[aTo - 1] == b[bTo - 1]) {
+            aTo -= 1;
+            bTo -= 1;
+        }
+        if (aFrom == aTo || bFrom == bTo
+                || !middle(a, aFrom, aTo, b, bFrom, bTo)) {
+            mark(aFrom, aTo, bFrom, bTo);
+            return;
+        }
+        int splitA = aFrom + splitX;
+        int splitB = bFrom + splitY;
+        compare(a, aFrom, splitA, b, bFrom, splitB);
+        compare(a, splitA, aTo, b, splitB, bTo);
+    }
+
+    /** Finds a point on an optimal path through A[AFROM..ATO) and
+     * B[BFROM..BTO), which must both be non-empty and differ in their
+     * first and last lines, by running the greedy algorithm forward
+     * from the start and backward from the end until the two meet, or
+     * until maxCost edits have been looked for in each direction.
+     * Leaves the point in splitX and splitY.
+     * @param a The hashes of the first version.
+     * @param aFrom The first line compared.
+     * @param aTo The line after the last.
+     * @param b The hashes of the second version.
+     * @param bFrom The first line compared.
+     * @param bTo The line after the last.
+     * @return Returns false if no point was found.
+     */
+    private boolean middle(long[] a, int aFrom, int aTo, long[] b, int bFrom,
+                       int bTo) {
+        int n = aTo - aFrom;
+        int m = bTo - bFrom;
+        int maxD = (n + m + 1) / 2;
+        int offset = Math.min(maxD, maxCost + 1);
+        int length = 2 * offset + 1;
+        Arrays.fill(forward, 0, length, -1);
+        Arrays.fill(backward, 0, length, -1);
+        forward[offset + 1] = 0;
+        backward[offset + 1] = 0;
+        int delta = n - m;
+        boolean odd = (delta & 1) != 0;
+        int k1start = 0;
+        int k1end = 0;
+        int k2start = 0;
+        int k2end = 0;
+        for (int d = 0; d < maxD; d += 1) {
+            for (int k1 = -d + k1start; k1 <= d - k1end; k1 += 2) {
+                int k1off = offset + k1;
+                int x1 = k1 == -d || k1 != d
+                        && forward[k1off - 1] < forward[k1off + 1]
+                        ? forward[k1off + 1] : forward[k1off - 1] + 1;
+                int y1 = x1 - k1;
+                while (x1 < n && y1 < m
+                        && a[aFrom + x1] == b[bFrom + y1]) {
+                    x1 += 1;
+                    y1 += 1;
+                }
+                forward[k1off] = x1;
+                if (x1 > n) {
+                    k1end += 2;
+                } else if (y1 > m) {
+                    k1start += 2;
+                } else if (odd) {
+                    int k2off = offset + delta - k1;
+                    if (k2off >= 0 && k2off < length
+                            && backward[k2off] != -1
+                            && x1 >= n - backward[k2off]) {
+                        splitX = x1;
+                        splitY = y1;
+                        return true;
+                    }
+                }
+            }
+            for (int k2 = -d + k2start; k2 <= d - k2end; k2 += 2) {
+                int k2off = offset + k2;
+                int x2 = k2 == -d || k2 != d
+                        && backward[k2off - 1] < backward[k2off + 1]
+                        ? backward[k2off + 1] : backward[k2off - 1] + 1;
+                int y2 = x2 - k2;
+                while (x2 < n && y2 < m
+                        && a[aTo - 1 - x2] == b[bTo - 1 - y2]) {
+                    x2 += 1;
+                    y2 += 1;
+                }
+                backward[k2off] = x2;
+                if (x2 > n) {
+                    k2end += 2;
+                } else if (y2 > m) {
+                    k2start += 2;
+                } else if (!odd) {
+                    int k1off = offset + delta - k2;
+                    if (k1off >= 0 && k1off < length
+                            && forward[k1off] != -1
+                            && forward[k1off] >= n - x2) {
+                        splitX = forward[k1off];
+                        splitY = forward[k1off] - (k1off - offset);
+                        return true;
+                    }
+                }
+            }
+            if (d >= maxCost) {
+                return furthest(d, n, m, k1start, k1end, k2start, k2end);
+            }
+        }
+        return false;
+    }
+
+    /** Finds the point that the paths of middle with D edits got
+     * furthest to, forward from the start or backward from the end of
+     * a problem of N and M lines. The diagonals of each direction still
+     * inside the grid are K1START, K1END, K2START and K2END from its
+     * ends. Leaves the point in splitX and splitY.
+     * @param d The number of edits.
+     * @param n The number of lines of the first version compared.
+     * @param m The number of lines of the second version compared.
+     * @param k1start Diagonals dropped at the low end going forward.
+     * @param k1end Diagonals dropped at the high end going forward.
+     * @param k2start Diagonals dropped at the low end going backward.
+     * @param k2end Diagonals dropped at the high end going backward.
+     * @return Returns false if the point is either end.
+     */
+    private boolean furthest(int d, int n, int m, int k1start, int k1end,
+                             int k2start, int k2end) {
+        int offset = Math.min((n + m + 1) / 2, maxCost + 1);
+        int best = 0;
+        for (int k = -d + k1start; k <= d - k1end; k += 2) {
+            int x = forward[offset + k];
+            int y = x - k;
+            if (x <= n && y >= 0 && y <= m && x + y > best) {
+                best = x + y;
+                splitX = x;
+                splitY = y;
+            }
+        }
+        for (int k = -d + k2start; k <= d - k2end; k += 2) {
+            int x = backward[offset + k];
+            int y = x - k;
+            if (x <= n && y >= 0 && y <= m && x + y > best) {
+                best = x + y;
+                splitX = n - x;
+                splitY = m - y;
+            }
+        }
+        return best > 0 && splitX + splitY > 0 && splitX + splitY < n + m;
+    }
+
+    /** Marks A[AFROM..ATO) and B[BFROM..BTO), counted among the lines
+     * compared, as changed.
+     * @param aFrom The first line removed.
+     * @param aTo The line after the last.
+     * @param bFrom The first line added.
+     * @param bTo The line after the last.
+     */
+    private void mark(int aFrom, int aTo, int bFrom, int bTo) {
+        for (int i = aFrom; i < aTo; i += 1) {
+            changedA.set(mapA[i]);
+        }
+        for (int j = bFrom; j < bTo; j += 1) {
+            changedB.set(mapB[j]);
+        }
+    }
+
+    /** Records that A[AFROM..ATO) became B[BFROM..BTO), joining it to
+     * the region before if they touch.
+     * @param aFrom The first line removed.
+     * @param aTo The line after the last.
+     * @param bFrom The first line added.
+     * @param bTo The line after the last.
+     */
+    private void record(int aFrom, int aTo, int bFrom, int bTo) {
+        if (used > 0 && edits[used - 3] == aFrom && edits[used - 1] == bFrom) {
+            edits[used - 3] = aTo;
+            edits[used - 1] = bTo;
+            return;
+        }
+        if (used == edits.length) {
+            edits = Arrays.copyOf(edits, 2 * used);
+        }
+        edits[used] = aFrom;
+        edits[used + 1] = aTo;
+        edits[used + 2] = bFrom;
+        edits[used + 3] = bTo;
+        used += 4;
+    }
+}
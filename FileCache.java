@@ -0,0 +1,99 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * FileCache class for Gitlet, the tiny stupid version-control system.
+ * Holds the value last read from a small file and reads the file again
+ * only when its size or modification time has changed, so that a
+ * long-running process sees writes made by others. As in StatIndex, a
+ * value read less than RACY after the file was modified is not trusted,
+ * since the file may have been written again within the same tick.
+ *
+ * @param <T> The type of the value.
+ * @author Erin Bhan
+ */
+class FileCache<T> {
+
+    /** How long after a write a file's timestamp may be reused.*/
+    private static final long RACY = TimeUnit.MILLISECONDS.toNanos(10);
+
+    /** The file.*/
+    private final File file;
+    /** Reads the value from the file.*/
+    private final Function<File, T> reader;
+    /** The value, or null if not read yet.*/
+    private T value;
+    /** Size of the file when it was read.*/
+    private long size;
+    /** Modification time of the file when it was read, in nanoseconds.*/
+    private long mtime;
+    /** Whether the value may be reused while the stat data matches.*/
+    private boolean trusted;
+
+    /** A cache of the value that READER reads from FILE.
+     * @param file1 The file.
+     * @param reader1 Reads the file.
+     */
+    FileCache(File file1, Function<File, T> reader1) {
+        file = file1;
+        reader = reader1;
+    }
+
+    /** The value in the file, read again if the file changed.
+     * @return Returns the value.
+     */
+    synchronized T get() {
+        long before = System.currentTimeMillis();
+        BasicFileAttributes attrs = stat();
+        if (value != null && trusted && attrs != null
+                && attrs.size() == size
+                && attrs.lastModifiedTime().to(TimeUnit.NANOSECONDS)
+                == mtime) {
+            return value;
+        }
+        value = reader.apply(file);
+        remember(attrs, before);
+        return value;
+    }
+
+    /** Records that VALUE1 was just written to the file.
+     * @param value1 The value written.
+     */
+    synchronized void put(T value1) {
+        long before = System.currentTimeMillis();
+        value = value1;
+        remember(stat(), before);
+    }
+
+    /** Records the stat data the value goes with.
+     * @param attrs The file's attributes, or null if it is missing.
+     * @param readAt When the value was read, in milliseconds.
+     */
+    private void remember(BasicFileAttributes attrs, long readAt) {
+        if (attrs == null) {
+            trusted = false;
+            return;
+        }
+        size = attrs.size();
+        mtime = attrs.lastModifiedTime().to(TimeUnit.NANOSECONDS);
+        trusted = mtime + RACY < TimeUnit.MILLISECONDS.toNanos(readAt);
+    }
+
+    /** The file's current attributes.
+     * @return Returns them, or null if the file is missing.
+     */
+    private BasicFileAttributes stat() {
+        try {
+            return Files.readAttributes(file.toPath(),
+                    BasicFileAttributes.class);
+        } catch (IOException excp) {
+            return null;
+        }
+    }
+}
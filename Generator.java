@@ -0,0 +1,462 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * Generator class for Gitlet, the tiny stupid version-control system.
+ * Builds a synthetic repository of a given shape straight into the
+ * .gitlet layout: commits, trees and blobs go into packs, and the commit graph,
+ * id index, message index and journal are written as the commits are
+ * made, so no command has to rebuild them. The result is the same for
+ * the same seed and shape. Usage:
+ *
+ *     java gitlet.Generator DIR [KEY=VALUE ...]
+ *
+ * with these keys (defaults in brackets):
+ *   seed      seed of all choices and contents [1]
+ *   commits   number of commits, counting merges [1000]
+ *   branches  lines of development, master included [1]
+ *   merge     commits on a branch before it is merged into master and
+ *             forked again; 0 never merges [0]
+ *   files     number of small files [100]
+ *   size      size of each small file in bytes [1024]
+ *   dirs      subdirectories the small files are spread over, d0, d1,
+ *             ...; 0 keeps them at the top [0]
+ *   huge      number of huge files, added once and never changed [0]
+ *   hugesize  size of each huge file in bytes [16777216]
+ *   changes   small files changed by each commit [1]
+ *
+ * Branches other than master are named b1, b2, ...; each is forked from
+ * master the first time it gets a commit. Commits go to the branches in
+ * turn. The working directory is left checked out at master.
+ *
+ * @author Erin Bhan
+ */
+class Generator {
+
+    /** Length of the lines of generated files.*/
+    private static final int LINE = 64;
+    /** Timestamp of the first generated commit.*/
+    private static final long EPOCH = 1577836800000L;
+    /** Time between generated commits in milliseconds.*/
+    private static final long STEP = 60000L;
+
+    /** One line of development.*/
+    private static class Branch {
+        /** Branch name.*/
+        private final String name;
+        /** Id of the head commit, or null before the branch starts.*/
+        private String head;
+        /** Graph record number of the head commit.*/
+        private int record;
+        /** Blob id of each tracked file.*/
+        private HashMap<String, String> tracked = new HashMap<>();
+        /** Contents of each tracked file. Arrays are shared between
+         * branches and never changed; an edit makes a new array.*/
+        private HashMap<String, byte[]> contents = new HashMap<>();
+        /** Files changed since the branch was last forked.*/
+        private HashSet<String> changed = new HashSet<>();
+        /** Root tree of the head commit, or null before the first.*/
+        private String root;
+        /** Blob id of each file changed since the head commit.*/
+        private HashMap<String, String> touched = new HashMap<>();
+        /** Commits since the branch was last forked.*/
+        private int since;
+
+        /** A branch named NAME.
+         * @param name1 The name.
+         */
+        Branch(String name1) {
+            name = name1;
+        }
+
+        /** Makes this branch start again at FROM's head.
+         * @param from The branch to fork from.
+         */
+        void fork(Branch from) {
+            head = from.head;
+            record = from.record;
+            root = from.root;
+            touched.clear();
+            tracked = new HashMap<>(from.tracked);
+            contents = new HashMap<>(from.contents);
+            changed.clear();
+            since = 0;
+        }
+    }
+
+    /** Shape of the repository, by key.*/
+    private final Map<String, Long> shape = new HashMap<>();
+    /** The lines of development, master first.*/
+    private final List<Branch> branches = new ArrayList<>();
+    /** Source of all choices and contents.*/
+    private Random random;
+    /** Compresses blobs; fast rather than small.*/
+    private final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+    /** Blob pack being written.*/
+    private Pack.Appender blobs;
+    /** Commit pack being written.*/
+    private Pack.Appender commits;
+    /** Tree pack being written.*/
+    private Pack.Appender treePack;
+    /** Ids of the trees written.*/
+    private final HashSet<String> treeIds = new HashSet<>();
+    /** Trees written that a branch head may still use, by id. The tree
+     * pack cannot be read until it is closed, so updates read these.*/
+    private final HashMap<String, Tree> liveTrees = new HashMap<>();
+    /** Number of live trees after they were last pruned.*/
+    private int livePruned;
+    /** Builds the trees of commits into the tree pack.*/
+    private TreeStore trees;
+    /** Commit graph being written.*/
+    private CommitGraph.Writer graph;
+    /** Journal being written.*/
+    private Journal.Writer journal;
+    /** Message index being written.*/
+    private MessageIndex.Writer messages;
+    /** Every commit id, in the order made.*/
+    private final ArrayList<String> ids = new ArrayList<>();
+    /** Number of blobs written.*/
+    private long blobCount;
+
+    /** A generator of the default shape.*/
+    Generator() {
+        shape.put("seed", 1L);
+        shape.put("commits", 1000L);
+        shape.put("branches", 1L);
+        shape.put("merge", 0L);
+        shape.put("files", 100L);
+        shape.put("size", 1024L);
+        shape.put("dirs", 0L);
+        shape.put("huge", 0L);
+        shape.put("hugesize", 1L << 24);
+        shape.put("changes", 1L);
+    }
+
+    /** Changes one key of the shape.
+     * @param key The key.
+     * @param value Its new value.
+     * @return Returns this generator.
+     */
+    Generator set(String key, long value) {
+        if (!shape.containsKey(key)) {
+            throw Utils.error("Unknown shape key %s.", key);
+        }
+        shape.put(key, value);
+        return this;
+    }
+
+    /** Usage: java gitlet.Generator DIR [KEY=VALUE ...].
+     * @param args The directory and the shape.
+     */
+    public static void main(String... args) throws IOException {
+        if (args.length == 0) {
+            System.out.println("Usage: java gitlet.Generator DIR "
+                    + "[KEY=VALUE ...]");
+            return;
+        }
+        Generator gen = new Generator();
+        for (int i = 1; i < args.length; i += 1) {
+            String[] kv = args[i].split("=", 2);
+            if (kv.length != 2) {
+                System.out.println("Incorrect operands.");
+                return;
+            }
+            gen.set(kv[0], Long.parseLong(kv[1]));
+        }
+        File dir = new File(args[0]).getAbsoluteFile();
+        dir.mkdirs();
+        System.setProperty("gitlet.dir", dir.getPath());
+        long start = System.nanoTime();
+        gen.run();
+        System.out.printf("Generated %d commits and %d blobs in %.1f s.%n",
+                gen.ids.size(), gen.blobCount,
+                (System.nanoTime() - start) / 1e9);
+    }
+
+    /** Writes the repository into the directory Repo uses, which must
+     * not hold one yet.*/
+    void run() throws IOException {
+        if (Repo.GITLET.exists()) {
+            throw Utils.error("A Gitlet version-control system already "
+                    + "exists in %s.", Repo.CWD);
+        }
+        for (File d : new File[] {Repo.COMMITS, Repo.TREEDIR, Repo.BLOBS,
+            Repo.BRANCHES, Repo.GLOBALLOG, Repo.PACKS}) {
+            d.mkdirs();
+        }
+        random = new Random(shape.get("seed"));
+        int lines = (int) Math.max(1, shape.get("branches"));
+        branches.add(new Branch("master"));
+        for (int k = 1; k < lines; k += 1) {
+            branches.add(new Branch("b" + k));
+        }
+        Branch master = branches.get(0);
+        blobs = Repo.BLOB_PACK.append();
+        commits = Repo.COMMIT_PACK.append();
+        treePack = Repo.TREE_PACK.append();
+        trees = new TreeStore(Repo.TREEDIR, Repo.TREE_PACK) {
+            @Override
+            String write(Tree t) {
+                byte[] encoded = t.encode();
+                String id = Utils.sha1((Object) encoded);
+                if (treeIds.add(id)) {
+                    try {
+                        treePack.add(id, encoded);
+                    } catch (IOException excp) {
+                        throw new IllegalArgumentException(
+                                excp.getMessage());
+                    }
+                }
+                liveTrees.put(id, t);
+                return id;
+            }
+
+            @Override
+            Tree read(String id) {
+                Tree t = liveTrees.get(id);
+                return t != null ? t : super.read(id);
+            }
+        };
+        graph = new CommitGraph.Writer(Repo.GRAPHFILE);
+        journal = new Journal(Repo.JOURNALFILE).new Writer();
+        messages = new MessageIndex(Repo.MESSAGES).new Writer();
+        try {
+            emit(master, new Commit("initial commit", null, null), null);
+            addFiles(master);
+            long total = shape.get("commits");
+            long merge = shape.get("merge");
+            for (int i = ids.size(); i < total; i += 1) {
+                Branch b = branches.get(i % lines);
+                if (b.head == null) {
+                    b.fork(master);
+                }
+                if (b != master && merge > 0 && b.since >= merge) {
+                    merge(master, b, i);
+                    b.fork(master);
+                } else {
+                    change(b, i);
+                }
+            }
+        } finally {
+            blobs.close();
+            commits.close();
+            treePack.close();
+            graph.close();
+            journal.close();
+            messages.close();
+        }
+        new IdIndex(Repo.IDINDEX).rewrite(ids);
+        for (Branch b : branches) {
+            if (b.head != null) {
+                Utils.writeContents(Utils.join(Repo.BRANCHES,
+                        b.name + ".txt"), b.head);
+            }
+        }
+        Utils.writeContents(Repo.ACTIVEBRANCH, "master");
+        Utils.writeObject(Repo.STAGINGFILE, new StagingArea());
+        for (Map.Entry<String, byte[]> e : master.contents.entrySet()) {
+            File f = Utils.join(Repo.CWD, e.getKey());
+            f.getParentFile().mkdirs();
+            Utils.writeContents(f, (Object) e.getValue());
+        }
+    }
+
+    /** Commits every file to B.
+     * @param b The branch, which is master.
+     */
+    private void addFiles(Branch b) throws IOException {
+        for (int i = 0; i < shape.get("files"); i += 1) {
+            put(b, small(i), text(shape.get("size").intValue()));
+        }
+        for (int i = 0; i < shape.get("huge"); i += 1) {
+            put(b, "h" + i + ".txt", text(shape.get("hugesize").intValue()));
+        }
+        b.changed.clear();
+        commit(b, "add files", null);
+    }
+
+    /** The path of small file number I.
+     * @param i The file number.
+     * @return Returns the path.
+     */
+    private String small(int i) {
+        long dirs = shape.get("dirs");
+        String name = "f" + i + ".txt";
+        return dirs > 0 ? "d" + (i % dirs) + "/" + name : name;
+    }
+
+    /** Makes commit number I on B, changing some small files.
+     * @param b The branch.
+     * @param i The commit number.
+     */
+    private void change(Branch b, int i) throws IOException {
+        int files = shape.get("files").intValue();
+        long n = Math.min(files, shape.get("changes"));
+        HashSet<String> picked = new HashSet<>();
+        while (picked.size() < n) {
+            picked.add(small(random.nextInt(files)));
+        }
+        for (String name : picked) {
+            put(b, name, edit(b.contents.get(name)));
+        }
+        commit(b, "commit " + i + " on " + b.name, null);
+    }
+
+    /** Merges FROM into master, as commit number I. Files changed on
+     * FROM since it forked take FROM's version.
+     * @param master The master branch.
+     * @param from The branch merged.
+     * @param i The commit number.
+     */
+    private void merge(Branch master, Branch from, int i) throws IOException {
+        for (String name : from.changed) {
+            master.tracked.put(name, from.tracked.get(name));
+            master.touched.put(name, from.tracked.get(name));
+            master.contents.put(name, from.contents.get(name));
+            master.changed.add(name);
+        }
+        commit(master, "Merged " + from.name + " into master.", from);
+    }
+
+    /** Commits the tracked files of B.
+     * @param b The branch.
+     * @param message The commit message.
+     * @param other The branch merged in, or null.
+     */
+    private void commit(Branch b, String message, Branch other)
+        throws IOException {
+        Commit c = new Commit(message, b.head,
+                other == null ? null : other.head);
+        emit(b, c, other);
+    }
+
+    /** Writes commit C, which becomes the head of B.
+     * @param b The branch.
+     * @param c The commit.
+     * @param other The branch merged in, or null.
+     */
+    private void emit(Branch b, Commit c, Branch other) throws IOException {
+        if (c.getParent() != null) {
+            c.setTimestamp(new Date(EPOCH + ids.size() * STEP));
+        }
+        b.root = trees.update(b.root, b.touched);
+        b.touched.clear();
+        c.setTree(b.root);
+        byte[] encoded = c.encode();
+        String id = Utils.sha1((Object) encoded);
+        commits.add(id, encoded);
+        b.record = graph.append(id, b.head == null ? -1 : b.record,
+                other == null ? -1 : other.record);
+        journal.append(id, c.getTimestamp().getTime(), c.getMessage());
+        messages.add(id, c.getMessage());
+        ids.add(id);
+        b.head = id;
+        b.since += 1;
+        if (liveTrees.size() > 2 * Math.max(livePruned, 1024)) {
+            pruneTrees();
+        }
+    }
+
+    /** Forgets the written trees that no branch head uses.*/
+    private void pruneTrees() {
+        HashSet<String> live = new HashSet<>();
+        ArrayDeque<String> pending = new ArrayDeque<>();
+        for (Branch b : branches) {
+            if (b.root != null) {
+                pending.push(b.root);
+            }
+        }
+        while (!pending.isEmpty()) {
+            String id = pending.pop();
+            Tree t = liveTrees.get(id);
+            if (t == null || !live.add(id)) {
+                continue;
+            }
+            for (Tree.Entry e : t.entries().values()) {
+                if (e.isTree()) {
+                    pending.push(e.id());
+                }
+            }
+        }
+        liveTrees.keySet().retainAll(live);
+        livePruned = liveTrees.size();
+    }
+
+    /** Stores CONTENTS as file NAME of B.
+     * @param b The branch.
+     * @param name The file's name.
+     * @param contents The file's contents.
+     */
+    private void put(Branch b, String name, byte[] contents)
+        throws IOException {
+        String id = Utils.sha1((Object) contents);
+        ByteArrayOutputStream bytes =
+                new ByteArrayOutputStream(contents.length / 2 + 64);
+        if (contents.length >= BlobStore.RAW_SIZE) {
+            bytes.write(BlobStore.RAW);
+            bytes.write(contents);
+        } else {
+            bytes.write(BlobStore.DEFLATED);
+            deflater.reset();
+            try (DeflaterOutputStream z =
+                         new DeflaterOutputStream(bytes, deflater)) {
+                z.write(contents);
+            }
+        }
+        blobs.add(id, bytes.toByteArray());
+        blobCount += 1;
+        b.tracked.put(name, id);
+        b.touched.put(name, id);
+        b.contents.put(name, contents);
+        b.changed.add(name);
+    }
+
+    /** SIZE bytes of random printable lines.
+     * @param size The size.
+     * @return Returns the text.
+     */
+    private byte[] text(int size) {
+        byte[] t = new byte[size];
+        fill(t, 0, size);
+        return t;
+    }
+
+    /** A copy of OLD with one line replaced.
+     * @param old The old contents.
+     * @return Returns the new contents.
+     */
+    private byte[] edit(byte[] old) {
+        byte[] t = old.clone();
+        if (t.length > 0) {
+            int at = random.nextInt((t.length + LINE - 1) / LINE) * LINE;
+            fill(t, at, Math.min(t.length, at + LINE));
+        }
+        return t;
+    }
+
+    /** Fills T[FROM..TO) with random printable characters, ending each
+     * line with a newline.
+     * @param t The bytes.
+     * @param from The first byte.
+     * @param to One past the last byte.
+     */
+    private void fill(byte[] t, int from, int to) {
+        for (int i = from; i < to; i += 1) {
+            t[i] = (i + 1) % LINE == 0 ? (byte) '\n'
+                    : (byte) (' ' + random.nextInt(95));
+        }
+    }
+}
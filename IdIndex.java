@@ -0,0 +1,190 @@
+package gitlet;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.TreeSet;
+
+/**
+ * IdIndex class for Gitlet, the tiny stupid version-control system.
+ * Keeps every commit id in a sorted file of fixed-width records that is
+ * memory-mapped and binary searched, so an abbreviated id is resolved
+ * in logarithmic time. New ids go to a short unsorted tail file, which
+ * is merged into the sorted file once it grows past TAIL_LIMIT ids.
+ *
+ * @author Erin Bhan
+ */
+class IdIndex {
+
+    /** Magic number at the start of the sorted file.*/
+    private static final int MAGIC = 0x47494458;
+    /** Size of the sorted file header: magic and count.*/
+    private static final int HEADER = 8;
+    /** Length of a commit id.*/
+    private static final int ID = Utils.UID_LENGTH;
+    /** Number of tail ids that triggers a merge into the sorted file.*/
+    private static final int TAIL_LIMIT = 1024;
+
+    /** The sorted file.*/
+    private final File sorted;
+    /** The tail file.*/
+    private final File tail;
+    /** The mapped sorted file.*/
+    private ByteBuffer map;
+    /** Number of ids in the sorted file.*/
+    private int count;
+    /** The ids in the tail.*/
+    private List<String> recent;
+
+    /** The index stored in FILE and FILE.log.
+     * @param file The sorted file.
+     */
+    IdIndex(File file) {
+        sorted = file;
+        tail = new File(file.getPath() + ".log");
+        load();
+    }
+
+    /** Whether the index files exist.
+     * @return true if the index has been written.
+     */
+    boolean exists() {
+        return sorted.isFile();
+    }
+
+    /** Adds a new id.
+     * @param id The commit id.
+     */
+    void add(String id) {
+        try (FileOutputStream out = new FileOutputStream(tail, true)) {
+            out.write((id + "\n").getBytes(StandardCharsets.US_ASCII));
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        recent.add(id);
+        if (recent.size() > TAIL_LIMIT) {
+            TreeSet<String> all = new TreeSet<>(recent);
+            for (int i = 0; i < count; i += 1) {
+                all.add(idAt(i));
+            }
+            rewrite(all);
+        }
+    }
+
+    /** Finds the ids that start with PREFIX. At most LIMIT are returned,
+     * which is enough to tell a unique prefix from an ambiguous one.
+     * @param prefix The abbreviated id.
+     * @param limit The most ids to return.
+     * @return The matching ids.
+     */
+    List<String> lookup(String prefix, int limit) {
+        ArrayList<String> result = new ArrayList<>();
+        byte[] key = prefix.getBytes(StandardCharsets.US_ASCII);
+        if (key.length == 0 || key.length > ID) {
+            return result;
+        }
+        int lo = 0, hi = count;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (compareAt(mid, key) < 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        for (int i = lo; i < count && result.size() < limit
+                && compareAt(i, key) == 0; i += 1) {
+            result.add(idAt(i));
+        }
+        for (String id : recent) {
+            if (result.size() < limit && id.startsWith(prefix)
+                    && !result.contains(id)) {
+                result.add(id);
+            }
+        }
+        return result;
+    }
+
+    /** Replaces the whole index with IDS.
+     * @param ids The commit ids.
+     */
+    void rewrite(Collection<String> ids) {
+        TreeSet<String> all = new TreeSet<>(ids);
+        ByteBuffer buf = ByteBuffer.allocate(HEADER + all.size() * ID);
+        buf.putInt(MAGIC).putInt(all.size());
+        for (String id : all) {
+            buf.put(id.getBytes(StandardCharsets.US_ASCII));
+        }
+        File tmp = new File(sorted.getPath() + ".tmp");
+        Utils.writeContents(tmp, (Object) buf.array());
+        try {
+            Files.move(tmp.toPath(), sorted.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        tail.delete();
+        load();
+    }
+
+    /** Compares the first KEY.length bytes of id I against KEY.
+     * @param i The record number.
+     * @param key The id prefix.
+     * @return Negative, zero or positive as for compareTo.
+     */
+    private int compareAt(int i, byte[] key) {
+        int base = HEADER + i * ID;
+        for (int k = 0; k < key.length; k += 1) {
+            int c = (map.get(base + k) & 0xff) - (key[k] & 0xff);
+            if (c != 0) {
+                return c;
+            }
+        }
+        return 0;
+    }
+
+    /** The id of record I.
+     * @param i The record number.
+     * @return Returns the id.
+     */
+    private String idAt(int i) {
+        byte[] key = new byte[ID];
+        map.get(HEADER + i * ID, key);
+        return new String(key, StandardCharsets.US_ASCII);
+    }
+
+    /** Maps the sorted file and reads the tail.*/
+    private void load() {
+        recent = new ArrayList<>();
+        if (tail.isFile()) {
+            for (String line : Utils.readContentsAsString(tail).split("\n")) {
+                if (line.length() == ID) {
+                    recent.add(line);
+                }
+            }
+        }
+        if (!sorted.isFile()) {
+            map = ByteBuffer.allocate(0);
+            count = 0;
+            return;
+        }
+        try (FileChannel ch = FileChannel.open(sorted.toPath())) {
+            map = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        if (map.getInt(0) != MAGIC) {
+            throw Utils.error("Corrupt commit id index.");
+        }
+        count = map.getInt(4);
+    }
+}
@@ -0,0 +1,199 @@
+package gitlet;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+import java.util.function.Function;
+
+/**
+ * Journal class for Gitlet, the tiny stupid version-control system.
+ * An append-only file with one record per commit, in the order the
+ * commits were made: the commit id, its timestamp in milliseconds and
+ * its message as UTF-8 after a four-byte length. Reading maps the
+ * file a window at a time, so the first records are available at once
+ * however long the journal is. A record cut short by a crash is ignored.
+ *
+ * @author Erin Bhan
+ */
+class Journal {
+
+    /** Magic number at the start of the file.*/
+    private static final int MAGIC = 0x474a524e;
+    /** Size of the file header.*/
+    private static final int HEADER = 4;
+    /** Length of a commit id.*/
+    private static final int ID = Utils.UID_LENGTH;
+    /** Size of a record before its message: id, timestamp and length.*/
+    private static final int FIXED = ID + 8 + 4;
+    /** Most bytes mapped at once.*/
+    private static final int WINDOW = 1 << 26;
+
+    /** Receives the records of a journal.*/
+    interface Visitor {
+        /** Called for each record, oldest first.
+         * @param id The commit id.
+         * @param time The commit's timestamp in milliseconds.
+         * @param message The commit's message.
+         */
+        void visit(String id, long time, String message) throws IOException;
+    }
+
+    /** The journal file.*/
+    private final File file;
+
+    /** The journal stored in FILE.
+     * @param file1 The journal file.
+     */
+    Journal(File file1) {
+        file = file1;
+    }
+
+    /** Whether the journal has been written.
+     * @return true if the file exists.
+     */
+    boolean exists() {
+        return file.isFile();
+    }
+
+    /** Appends the record of commit ID.
+     * @param id The commit id.
+     * @param time The commit's timestamp in milliseconds.
+     * @param message The commit's message.
+     */
+    void append(String id, long time, String message) {
+        boolean fresh = !file.exists();
+        try (DataOutputStream out = new DataOutputStream(
+                new FileOutputStream(file, true))) {
+            if (fresh) {
+                out.writeInt(MAGIC);
+            }
+            out.write(record(id, time, message));
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Rewrites the journal with the records of IDS.
+     * @param ids The commit ids, oldest first.
+     * @param commits Finds the commit with a given id.
+     */
+    void rewrite(Collection<String> ids,
+                 Function<String, Commit> commits) {
+        try (Writer out = new Writer()) {
+            for (String id : ids) {
+                Commit c = commits.apply(id);
+                out.append(id, c.getTimestamp().getTime(), c.getMessage());
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Writes a new journal, which replaces the old one when the writer
+     * is closed.*/
+    class Writer implements Closeable {
+        /** The new file, until it is closed.*/
+        private final File tmp = new File(file.getPath() + ".tmp");
+        /** Where records go.*/
+        private final DataOutputStream out;
+
+        /** A writer replacing this journal.*/
+        Writer() throws IOException {
+            out = new DataOutputStream(new BufferedOutputStream(
+                    new FileOutputStream(tmp), Utils.BUFFER_SIZE));
+            out.writeInt(MAGIC);
+        }
+
+        /** Writes the record of commit ID.
+         * @param id The commit id.
+         * @param time The commit's timestamp in milliseconds.
+         * @param message The commit's message.
+         */
+        void append(String id, long time, String message)
+            throws IOException {
+            out.write(record(id, time, message));
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.close();
+            Files.move(tmp.toPath(), file.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /** Calls VISITOR on every record, oldest first.
+     * @param visitor Receives the records.
+     */
+    void read(Visitor visitor) throws IOException {
+        try (FileChannel ch = FileChannel.open(file.toPath(),
+                StandardOpenOption.READ)) {
+            long size = ch.size();
+            if (size < HEADER) {
+                return;
+            }
+            if (ch.map(FileChannel.MapMode.READ_ONLY, 0, HEADER).getInt()
+                    != MAGIC) {
+                throw Utils.error("Corrupt journal.");
+            }
+            long pos = HEADER;
+            long window = WINDOW;
+            byte[] id = new byte[ID];
+            while (pos + FIXED <= size) {
+                ByteBuffer map = ch.map(FileChannel.MapMode.READ_ONLY, pos,
+                        Math.min(window, size - pos));
+                int end = 0;
+                while (map.remaining() >= FIXED) {
+                    map.get(id);
+                    long time = map.getLong();
+                    int len = map.getInt();
+                    if (len < 0 || map.remaining() < len) {
+                        break;
+                    }
+                    byte[] msg = new byte[len];
+                    map.get(msg);
+                    end = map.position();
+                    visitor.visit(new String(id, StandardCharsets.US_ASCII),
+                            time, new String(msg, StandardCharsets.UTF_8));
+                }
+                if (end == 0) {
+                    if (window >= size - pos) {
+                        return;
+                    }
+                    window = size - pos;
+                }
+                pos += end;
+            }
+        }
+    }
+
+    /** The record of commit ID.
+     * @param id The commit id.
+     * @param time The commit's timestamp in milliseconds.
+     * @param message The commit's message.
+     * @return Returns the encoded record.
+     */
+    private static byte[] record(String id, long time, String message)
+        throws IOException {
+        byte[] msg = message.getBytes(StandardCharsets.UTF_8);
+        ByteArrayOutputStream bytes =
+                new ByteArrayOutputStream(FIXED + msg.length);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.write(id.getBytes(StandardCharsets.US_ASCII));
+        out.writeLong(time);
+        out.writeInt(msg.length);
+        out.write(msg);
+        return bytes.toByteArray();
+    }
+}
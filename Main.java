@@ -1,6 +1,12 @@
 package gitlet;
 
 import java.io.IOException;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeParseException;
+import java.util.Arrays;
 
 /**
  * Driver class for Gitlet, the tiny stupid version-control system.
@@ -14,30 +20,88 @@ public class Main {
      * <COMMAND> <OPERAND> ....
      */
     public static void main(String... args) throws IOException {
-        Repo repo = new Repo();
+        int c = args.length > 0 && args[0].equals("--stats") ? 1 : 0;
+        boolean local = args.length == c + 1 && (args[c].equals("daemon")
+                || args[c].equals("batch"));
+        if (args.length > 0 && !local) {
+            int status = Daemon.forward(args);
+            if (status >= 0) {
+                System.exit(status);
+            }
+        }
+        int status = run(new Repo(), args);
+        if (status != 0) {
+            System.exit(status);
+        }
+    }
+
+    /** Runs the command ARGS against REPO. Called once per process, or
+     * once per request by the daemon. With --stats before the command,
+     * prints a summary of the work it did on standard error as one line
+     * of JSON.
+     * @param repo The repository.
+     * @param args The command and its operands.
+     * @return Returns the exit status: 0, or 1 if a batch had failures.*/
+    static int run(Repo repo, String... args) throws IOException {
+        boolean stats = args.length > 0 && args[0].equals("--stats");
+        if (stats) {
+            args = Arrays.copyOfRange(args, 1, args.length);
+        }
+        Stats.Command command =
+                new Stats.Command(args.length > 0 ? args[0] : "");
+        int status;
+        try {
+            status = dispatch(repo, args);
+        } finally {
+            command.end();
+        }
+        if (stats) {
+            System.out.flush();
+            System.err.println(command.summary());
+        }
+        repo.report(command);
+        return status;
+    }
+
+    /** Runs the command ARGS against REPO.
+     * @param repo The repository.
+     * @param args The command and its operands.
+     * @return Returns the exit status.*/
+    private static int dispatch(Repo repo, String... args)
+        throws IOException {
         if (args.length == 0) {
-            exitWithError("Please enter a command.");
+            System.out.print("Please enter a command.");
+            return 0;
         }
-        if (!repo.GITLET.exists() && !args[0].equals("init")) {
-            exitWithError("Not in an initialized Gitlet directory.");
+        if (!Repo.GITLET.exists() && !args[0].equals("init")) {
+            System.out.print("Not in an initialized Gitlet directory.");
+            return 0;
         }
         switch (args[0]) {
         case "init":
             repo.init(); break;
         case "add":
-            repo.add(args[1]); break;
+            repo.add(Arrays.copyOfRange(args, 1, args.length)); break;
         case "commit":
             repo.commit(args[1]); break;
         case "rm":
             repo.remove(args[1]); break;
         case "log":
-            repo.log(); break;
+            log(repo, args); break;
         case "global-log":
             repo.globalLog(); break;
         case "find":
-            repo.find(args[1]); break;
+            if (args.length > 2 && args[1].equals("--grep")) {
+                repo.findGrep(String.join(" ",
+                        Arrays.copyOfRange(args, 2, args.length)));
+            } else {
+                repo.find(args[1]);
+            }
+            break;
         case "status":
             repo.status(); break;
+        case "diff":
+            repo.diff(Arrays.copyOfRange(args, 1, args.length)); break;
         case "checkout":
             if (args.length == 3 && args[1].equals("--")) {
                 repo.checkout1(args[2]);
@@ -57,10 +121,64 @@ public class Main {
             repo.reset(args[1]); break;
         case "merge":
             repo.merge(args[1]); break;
+        case "repack":
+            repo.repack(); break;
+        case "migrate-blobs":
+            repo.migrateBlobs(); break;
+        case "batch":
+            return Batch.run(repo, System.in) > 0 ? 1 : 0;
+        case "daemon":
+            if (args.length == 1) {
+                Daemon.serve(repo);
+            } else {
+                System.out.println("Incorrect operands.");
+            }
+            break;
+        case "config":
+            repo.config(args[1], args.length > 2 ? args[2] : null); break;
         default:
             System.out.print("No command with that name exists.");
         }
-        return;
+        return 0;
+    }
+
+    /** Runs log with the options in ARGS: -n N, --since DATE, where
+     * DATE is yyyy-mm-dd or yyyy-mm-ddThh:mm:ss in local time, and
+     * --oneline.
+     * @param repo The repository.
+     * @param args The command and its options.*/
+    private static void log(Repo repo, String... args) throws IOException {
+        int limit = -1;
+        Instant since = null;
+        boolean oneline = false;
+        try {
+            for (int i = 1; i < args.length; i += 1) {
+                if (args[i].equals("-n") && i + 1 < args.length) {
+                    limit = Math.max(0, Integer.parseInt(args[++i]));
+                } else if (args[i].equals("--since") && i + 1 < args.length) {
+                    since = parseDate(args[++i]);
+                } else if (args[i].equals("--oneline")) {
+                    oneline = true;
+                } else {
+                    System.out.println("Incorrect operands.");
+                    return;
+                }
+            }
+        } catch (NumberFormatException | DateTimeParseException excp) {
+            System.out.println("Incorrect operands.");
+            return;
+        }
+        repo.log(limit, since, oneline);
+    }
+
+    /** The instant named by DATE in local time.
+     * @param date A date, with or without a time of day.
+     * @return Returns the instant.*/
+    private static Instant parseDate(String date) {
+        LocalDateTime time = date.contains("T")
+                ? LocalDateTime.parse(date)
+                : LocalDate.parse(date).atStartOfDay();
+        return time.atZone(ZoneId.systemDefault()).toInstant();
     }
 
     /** exits with Error.
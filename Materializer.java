@@ -0,0 +1,119 @@
+package gitlet;
+
+import java.io.File;
+import java.util.Collection;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Materializer class for Gitlet, the tiny stupid version-control system.
+ * Writes the files of a commit into the working directory on a bounded
+ * pool of worker threads, then deletes the files that the commit does
+ * not track and the directories they leave empty. Deletes only happen
+ * once every write has finished, and a failure to write one file is
+ * reported with that file's name instead of stopping the others.
+ *
+ * @author Erin Bhan
+ */
+class Materializer {
+
+    /** Most worker threads used.*/
+    private static final int MAX_THREADS = 16;
+
+    /** The outcome of a run.*/
+    static class Result {
+        /** Number of files written.*/
+        private int files;
+        /** Number of bytes written.*/
+        private final AtomicLong bytes = new AtomicLong();
+        /** Time taken in nanoseconds.*/
+        private long nanos;
+        /** Error message of each file that could not be written.*/
+        private final TreeMap<String, String> failures = new TreeMap<>();
+
+        /** Whether every file was written.
+         * @return true if there were no failures.
+         */
+        boolean ok() {
+            return failures.isEmpty();
+        }
+
+        /** The files that could not be written.
+         * @return Returns the error message of each such file.
+         */
+        Map<String, String> failures() {
+            return failures;
+        }
+
+        @Override
+        public String toString() {
+            double secs = Math.max(nanos, 1) / 1e9;
+            return String.format("Wrote %d files, %d bytes in %.3f s "
+                    + "(%.0f files/s, %.0f bytes/s).", files, bytes.get(),
+                    secs, files / secs, bytes.get() / secs);
+        }
+    }
+
+    /** Where blobs are read from.*/
+    private final BlobStore blobs;
+
+    /** A materializer reading from BLOBS1.
+     * @param blobs1 The blob store.
+     */
+    Materializer(BlobStore blobs1) {
+        blobs = blobs1;
+    }
+
+    /** Writes each file of WRITES into DIR with the contents of its blob,
+     * then deletes each file of DELETES from DIR unless a write failed.
+     * @param dir The working directory.
+     * @param writes The blob id of each file to write.
+     * @param deletes The files to delete.
+     * @return Returns the outcome.
+     */
+    Result run(File dir, Map<String, String> writes,
+               Collection<String> deletes) {
+        Result result = new Result();
+        long start = System.nanoTime();
+        int threads = Math.min(MAX_THREADS,
+                Math.max(1, Runtime.getRuntime().availableProcessors()));
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        TreeMap<String, Future<?>> tasks = new TreeMap<>();
+        try {
+            for (Map.Entry<String, String> e : writes.entrySet()) {
+                File f = Utils.join(dir, e.getKey());
+                String id = e.getValue();
+                tasks.put(e.getKey(), pool.submit(() -> {
+                    f.getParentFile().mkdirs();
+                    return result.bytes.addAndGet(blobs.copyTo(id, f));
+                }));
+            }
+            for (Map.Entry<String, Future<?>> t : tasks.entrySet()) {
+                try {
+                    t.getValue().get();
+                    result.files += 1;
+                } catch (ExecutionException excp) {
+                    result.failures.put(t.getKey(),
+                            String.valueOf(excp.getCause().getMessage()));
+                } catch (InterruptedException excp) {
+                    Thread.currentThread().interrupt();
+                    result.failures.put(t.getKey(), "interrupted");
+                }
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        if (result.ok()) {
+            for (String name : deletes) {
+                WorkTree.delete(dir, name);
+            }
+        }
+        result.nanos = System.nanoTime() - start;
+        return result;
+    }
+}
@@ -0,0 +1,424 @@
+package gitlet;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.function.Function;
+
+/**
+ * MessageIndex class for Gitlet, the tiny stupid version-control system.
+ * Maps commit messages, and the words in them, to the commits that have
+ * them, so find reads a few records instead of every commit. Whole
+ * messages and words are kept apart, each in a file of records sorted
+ * by key that is memory-mapped and binary searched, plus a short
+ * unsorted tail file that is merged into the sorted file once it grows
+ * past TAIL_LIMIT records. An index maps or reads each file once and
+ * keeps it until the index itself changes the file. Each record is the
+ * SHA-1 of a key followed by a commit id, both as raw bytes. Hash
+ * collisions are possible in principle, so callers check the commits
+ * they get back.
+ *
+ * @author Erin Bhan
+ */
+class MessageIndex {
+
+    /** Magic number at the start of each sorted file.*/
+    private static final int MAGIC = 0x474d5349;
+    /** Size of a sorted file header: magic and record count.*/
+    private static final int HEADER = 8;
+    /** Size of a raw SHA-1.*/
+    private static final int HASH = Utils.UID_LENGTH / 2;
+    /** Size of a record: key hash and commit id.*/
+    private static final int RECORD = 2 * HASH;
+    /** Number of tail records that triggers a merge into the sorted
+     * file.*/
+    private static final int TAIL_LIMIT = 4096;
+    /** Name of the files of whole messages.*/
+    private static final String EXACT = "exact";
+    /** Name of the files of words.*/
+    private static final String WORDS = "words";
+    /** The order of records: by key hash, then by commit id.*/
+    private static final Comparator<byte[]> ORDER = Arrays::compareUnsigned;
+    /** Hexadecimal digits, by value.*/
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    /** The index directory.*/
+    private final File dir;
+    /** The mapped sorted files, by kind, once read. A kind without a
+     * sorted file maps to an empty buffer.*/
+    private final HashMap<String, ByteBuffer> sortedMaps = new HashMap<>();
+    /** The contents of the tail files, by kind, once read.*/
+    private final HashMap<String, ByteBuffer> tails = new HashMap<>();
+
+    /** The index kept in DIR.
+     * @param dir1 The index directory.
+     */
+    MessageIndex(File dir1) {
+        dir = dir1;
+    }
+
+    /** Whether the index has been built.
+     * @return true if the sorted file of messages exists.
+     */
+    boolean exists() {
+        return new File(dir, EXACT).isFile();
+    }
+
+    /** The words of a message: runs of letters and digits, lower-cased.
+     * @param message The message.
+     * @return Returns the distinct words in order.
+     */
+    static Set<String> tokens(String message) {
+        LinkedHashSet<String> result = new LinkedHashSet<>();
+        for (String t : message.toLowerCase(Locale.ROOT)
+                .split("[^\\p{L}\\p{N}]+")) {
+            if (!t.isEmpty()) {
+                result.add(t);
+            }
+        }
+        return result;
+    }
+
+    /** Records that commit ID has MESSAGE.
+     * @param id The commit id.
+     * @param message Its message.
+     */
+    void add(String id, String message) {
+        try {
+            append(EXACT, List.of(record(message, id)));
+            append(WORDS, words(id, message));
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** The commits whose message may be MESSAGE.
+     * @param message The message.
+     * @return Returns the candidate ids, sorted.
+     */
+    Set<String> exact(String message) {
+        return lookup(EXACT, message);
+    }
+
+    /** The commits whose message may contain WORD.
+     * @param word A word, as returned by tokens.
+     * @return Returns the candidate ids, sorted.
+     */
+    Set<String> word(String word) {
+        return lookup(WORDS, word);
+    }
+
+    /** Rebuilds the index from scratch.
+     * @param ids Every commit id.
+     * @param messages The message of each commit.
+     */
+    void rewrite(Collection<String> ids, Function<String, String> messages) {
+        try (Writer out = new Writer()) {
+            for (String id : ids) {
+                out.add(id, messages.apply(id));
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Writes a new index into a temporary directory, which takes the
+     * place of the index when the writer is closed. Records are kept in
+     * memory until then, to be sorted.*/
+    class Writer implements Closeable {
+        /** The new directory, until it is closed.*/
+        private final File tmp = new File(dir.getPath() + ".tmp");
+        /** The records of whole messages.*/
+        private final ArrayList<byte[]> exact = new ArrayList<>();
+        /** The records of words.*/
+        private final ArrayList<byte[]> words = new ArrayList<>();
+
+        /** A writer building this index.*/
+        Writer() {
+            clear(tmp);
+            tmp.mkdirs();
+        }
+
+        /** Records that commit ID has MESSAGE.
+         * @param id The commit id.
+         * @param message Its message.
+         */
+        void add(String id, String message) {
+            exact.add(record(message, id));
+            words.addAll(words(id, message));
+        }
+
+        @Override
+        public void close() throws IOException {
+            sortedMaps.clear();
+            tails.clear();
+            exact.sort(ORDER);
+            words.sort(ORDER);
+            merge(null, exact, new File(tmp, EXACT));
+            merge(null, words, new File(tmp, WORDS));
+            clear(dir);
+            Files.move(tmp.toPath(), dir.toPath(),
+                    StandardCopyOption.ATOMIC_MOVE);
+        }
+    }
+
+    /** The word records for commit ID with MESSAGE.
+     * @param id The commit id.
+     * @param message Its message.
+     * @return Returns one record per distinct word.
+     */
+    private static List<byte[]> words(String id, String message) {
+        ArrayList<byte[]> result = new ArrayList<>();
+        for (String t : tokens(message)) {
+            result.add(record(t, id));
+        }
+        return result;
+    }
+
+    /** The record mapping KEY to ID.
+     * @param key The key.
+     * @param id The commit id.
+     * @return Returns the record.
+     */
+    private static byte[] record(String key, String id) {
+        byte[] r = new byte[RECORD];
+        System.arraycopy(hash(key), 0, r, 0, HASH);
+        for (int i = 0; i < HASH; i += 1) {
+            r[HASH + i] = (byte) (Character.digit(id.charAt(2 * i), 16) << 4
+                    | Character.digit(id.charAt(2 * i + 1), 16));
+        }
+        return r;
+    }
+
+    /** The raw SHA-1 of KEY.
+     * @param key The key.
+     * @return Returns the hash.
+     */
+    private static byte[] hash(String key) {
+        byte[] bytes = key.getBytes(StandardCharsets.UTF_8);
+        Stats.add(Stats.Counter.SHA1_BYTES, bytes.length);
+        try {
+            return MessageDigest.getInstance("SHA-1").digest(bytes);
+        } catch (NoSuchAlgorithmException excp) {
+            throw new IllegalArgumentException(
+                    "System does not support SHA-1");
+        }
+    }
+
+    /** The ids recorded under KEY in the files named KIND: a binary
+     * search of the sorted file, then a scan of the tail.
+     * @param kind EXACT or WORDS.
+     * @param key The key.
+     * @return Returns the ids, sorted.
+     */
+    private Set<String> lookup(String kind, String key) {
+        byte[] h = hash(key);
+        TreeSet<String> result = new TreeSet<>();
+        ByteBuffer map = sortedMap(kind);
+        if (map.capacity() > 0) {
+            int count = map.getInt(4);
+            int lo = 0, hi = count;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (compareAt(map, HEADER + mid * RECORD, h) < 0) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid;
+                }
+            }
+            for (int i = lo; i < count
+                    && compareAt(map, HEADER + i * RECORD, h) == 0; i += 1) {
+                result.add(idAt(map, HEADER + i * RECORD));
+            }
+        }
+        ByteBuffer data = tails.get(kind);
+        if (data == null) {
+            File tail = tailFile(kind);
+            data = ByteBuffer.wrap(tail.isFile() ? Utils.readContents(tail)
+                    : new byte[0]);
+            tails.put(kind, data);
+        }
+        for (int at = 0; at + RECORD <= data.capacity(); at += RECORD) {
+            if (compareAt(data, at, h) == 0) {
+                result.add(idAt(data, at));
+            }
+        }
+        return result;
+    }
+
+    /** The sorted file of KIND, mapped on first use.
+     * @param kind EXACT or WORDS.
+     * @return Returns the mapped file, or an empty buffer if there is
+     * none.
+     */
+    private ByteBuffer sortedMap(String kind) {
+        ByteBuffer map = sortedMaps.get(kind);
+        if (map != null) {
+            return map;
+        }
+        File sorted = new File(dir, kind);
+        if (!sorted.isFile()) {
+            map = ByteBuffer.allocate(0);
+        } else {
+            try (FileChannel ch = FileChannel.open(sorted.toPath())) {
+                map = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+            if (map.getInt(0) != MAGIC) {
+                throw Utils.error("Corrupt message index.");
+            }
+        }
+        sortedMaps.put(kind, map);
+        return map;
+    }
+
+    /** Compares the key hash of the record at AT in BUF against H.
+     * @param buf The records.
+     * @param at Where the record starts.
+     * @param h The key hash.
+     * @return Negative, zero or positive as for compareTo.
+     */
+    private static int compareAt(ByteBuffer buf, int at, byte[] h) {
+        for (int i = 0; i < HASH; i += 1) {
+            int c = Byte.compareUnsigned(buf.get(at + i), h[i]);
+            if (c != 0) {
+                return c;
+            }
+        }
+        return 0;
+    }
+
+    /** The commit id of the record at AT in BUF.
+     * @param buf The records.
+     * @param at Where the record starts.
+     * @return Returns the id in hex.
+     */
+    private static String idAt(ByteBuffer buf, int at) {
+        char[] id = new char[Utils.UID_LENGTH];
+        for (int i = 0; i < HASH; i += 1) {
+            int b = buf.get(at + HASH + i);
+            id[2 * i] = HEX[b >> 4 & 0xf];
+            id[2 * i + 1] = HEX[b & 0xf];
+        }
+        return new String(id);
+    }
+
+    /** Appends RECORDS to the tail of the files named KIND, and merges
+     * the tail into the sorted file once it is too long.
+     * @param kind EXACT or WORDS.
+     * @param records The records.
+     */
+    private void append(String kind, List<byte[]> records)
+            throws IOException {
+        File tail = tailFile(kind);
+        tails.remove(kind);
+        try (OutputStream out = new FileOutputStream(tail, true)) {
+            for (byte[] r : records) {
+                out.write(r);
+            }
+        }
+        if (tail.length() / RECORD <= TAIL_LIMIT) {
+            return;
+        }
+        byte[] data = Utils.readContents(tail);
+        ArrayList<byte[]> recent = new ArrayList<>();
+        for (int at = 0; at + RECORD <= data.length; at += RECORD) {
+            recent.add(Arrays.copyOfRange(data, at, at + RECORD));
+        }
+        recent.sort(ORDER);
+        File sorted = new File(dir, kind);
+        File tmp = new File(dir, kind + ".tmp");
+        merge(sorted.isFile() ? sorted : null, recent, tmp);
+        Files.move(tmp.toPath(), sorted.toPath(),
+                StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+        sortedMaps.remove(kind);
+        tail.delete();
+    }
+
+    /** Writes the records of the sorted file OLD and of RECORDS, which
+     * must be sorted too, in order into the sorted file DEST.
+     * @param old The sorted file, or null.
+     * @param records More records.
+     * @param dest The file to write.
+     */
+    private static void merge(File old, List<byte[]> records, File dest)
+            throws IOException {
+        try (DataInputStream in = old == null ? null
+                     : new DataInputStream(new BufferedInputStream(
+                             new FileInputStream(old), Utils.BUFFER_SIZE));
+             DataOutputStream out = new DataOutputStream(
+                     new BufferedOutputStream(new FileOutputStream(dest),
+                             Utils.BUFFER_SIZE))) {
+            int count = 0;
+            if (in != null) {
+                if (in.readInt() != MAGIC) {
+                    throw Utils.error("Corrupt message index.");
+                }
+                count = in.readInt();
+            }
+            out.writeInt(MAGIC);
+            out.writeInt(count + records.size());
+            byte[] r = new byte[RECORD];
+            int k = 0;
+            for (int i = 0; i < count; i += 1) {
+                in.readFully(r);
+                while (k < records.size()
+                        && ORDER.compare(records.get(k), r) < 0) {
+                    out.write(records.get(k));
+                    k += 1;
+                }
+                out.write(r);
+            }
+            for (; k < records.size(); k += 1) {
+                out.write(records.get(k));
+            }
+        }
+    }
+
+    /** The tail file of the files named KIND.
+     * @param kind EXACT or WORDS.
+     * @return Returns the file.
+     */
+    private File tailFile(String kind) {
+        return new File(dir, kind + ".log");
+    }
+
+    /** Deletes the directory D and the files in it, if it exists.
+     * @param d The directory.
+     */
+    private static void clear(File d) {
+        File[] files = d.listFiles();
+        if (files != null) {
+            for (File f : files) {
+                f.delete();
+            }
+        }
+        d.delete();
+    }
+}
@@ -0,0 +1,445 @@
+package gitlet;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Pack class for Gitlet, the tiny stupid version-control system.
+ * A pack is one append-only data file holding the bytes of many
+ * objects back to back, plus a sorted index of fixed-width entries
+ * (id, offset, length) that is memory-mapped and binary searched.
+ *
+ * @author Erin Bhan
+ */
+class Pack {
+
+    /** Width of an id slot in the index; fits the longest blob ids.*/
+    static final int KEY_WIDTH = 80;
+    /** Magic number at the start of every index file.*/
+    private static final int MAGIC = 0x47504b49;
+    /** Size of the index header: magic and entry count.*/
+    private static final int HEADER = 8;
+    /** Size of one index entry: id, offset and length.*/
+    private static final int ENTRY = KEY_WIDTH + 8 + 4;
+
+    /** The data file.*/
+    private final File data;
+    /** The index file.*/
+    private final File index;
+    /** The mapped index, or null until first use.*/
+    private volatile ByteBuffer map;
+    /** Number of entries in the mapped index.*/
+    private int count;
+    /** Modification time of the index when it was mapped.*/
+    private long mapped;
+    /** The mapped data file, or null until first use.*/
+    private ByteBuffer dataMap;
+
+    /** A pack stored as NAME.pack and NAME.idx.
+     * @param dir The directory holding the pack.
+     * @param name The name of the pack.
+     */
+    Pack(File dir, String name) {
+        data = Utils.join(dir, name + ".pack");
+        index = Utils.join(dir, name + ".idx");
+    }
+
+    /** Whether the pack holds an object.
+     * @param id The object id.
+     * @return true if the object is in this pack.
+     */
+    boolean contains(String id) {
+        return find(id) >= 0;
+    }
+
+    /** Reads an object out of the pack.
+     * @param id The object id.
+     * @return The object's bytes, or null if it is not in this pack.
+     */
+    byte[] read(String id) {
+        int i = find(id);
+        if (i < 0) {
+            return null;
+        }
+        long offset = map.getLong(HEADER + i * ENTRY + KEY_WIDTH);
+        int length = map.getInt(HEADER + i * ENTRY + KEY_WIDTH + 8);
+        byte[] result = new byte[length];
+        try {
+            slice(offset, length).get(result);
+            Stats.add(Stats.Counter.BYTES_READ, length);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        return result;
+    }
+
+    /** Opens an object in the pack for reading. Its bytes are read
+     * straight out of the mapped data file, without a copy on the heap.
+     * @param id The object id.
+     * @return A stream of the object's bytes, or null if it is not in
+     * this pack.
+     */
+    InputStream open(String id) throws IOException {
+        int i = find(id);
+        if (i < 0) {
+            return null;
+        }
+        long offset = map.getLong(HEADER + i * ENTRY + KEY_WIDTH);
+        int length = map.getInt(HEADER + i * ENTRY + KEY_WIDTH + 8);
+        Stats.add(Stats.Counter.BYTES_READ, length);
+        return new Slice(slice(offset, length));
+    }
+
+    /** Copies an object that starts with the byte TAG, less that byte,
+     * into DEST by transferring from the data file, so its bytes never
+     * enter the heap.
+     * @param id The object id.
+     * @param tag The first byte the object must have.
+     * @param dest The file to write.
+     * @return Returns the number of bytes written, or -1 if the object is
+     * not in this pack or does not start with TAG.
+     */
+    long transferTo(String id, int tag, File dest) throws IOException {
+        int i = find(id);
+        if (i < 0) {
+            return -1;
+        }
+        long offset = map.getLong(HEADER + i * ENTRY + KEY_WIDTH);
+        int length = map.getInt(HEADER + i * ENTRY + KEY_WIDTH + 8);
+        try (FileChannel ch = FileChannel.open(data.toPath())) {
+            ByteBuffer first = ByteBuffer.allocate(1);
+            if (length < 1 || ch.read(first, offset) != 1
+                    || first.get(0) != tag) {
+                return -1;
+            }
+            return BlobStore.transfer(ch, offset + 1, length - 1, dest);
+        }
+    }
+
+    /** All ids in the pack.
+     * @return The ids, in sorted order.
+     */
+    List<String> ids() {
+        load();
+        ArrayList<String> result = new ArrayList<>(count);
+        for (int i = 0; i < count; i += 1) {
+            result.add(keyAt(i));
+        }
+        return result;
+    }
+
+    /** Adds objects to the end of a pack. Readers see them once the
+     * appender is closed and the new index is in place.*/
+    class Appender implements Closeable {
+        /** Index entries: the old ones, then one per object added.*/
+        private final ArrayList<byte[]> entries = new ArrayList<>();
+        /** The data file, open for appending.*/
+        private final OutputStream out;
+        /** Offset in the data file of the next object.*/
+        private long offset;
+
+        /** An appender to this pack.*/
+        private Appender() throws IOException {
+            load();
+            for (int i = 0; i < count; i += 1) {
+                byte[] e = new byte[ENTRY];
+                map.position(HEADER + i * ENTRY);
+                map.get(e);
+                entries.add(e);
+            }
+            data.getParentFile().mkdirs();
+            offset = data.length();
+            out = new BufferedOutputStream(new FileOutputStream(data, true),
+                    Utils.BUFFER_SIZE);
+        }
+
+        /** Adds an object. If ID is added twice, the first copy is kept.
+         * @param id The object id.
+         * @param contents The object's bytes.
+         */
+        void add(String id, byte[] contents) throws IOException {
+            out.write(contents);
+            added(id, contents.length);
+        }
+
+        /** Adds an object stored in FILE, streaming its bytes.
+         * @param id The object id.
+         * @param file The object's bytes.
+         */
+        void add(String id, File file) throws IOException {
+            if (file.length() > Integer.MAX_VALUE) {
+                throw Utils.error("Object %s is too large to pack.", id);
+            }
+            added(id, (int) Files.copy(file.toPath(), out));
+        }
+
+        /** Records that LENGTH bytes of object ID were just written.
+         * @param id The object id.
+         * @param length The object's size.
+         */
+        private void added(String id, int length) {
+            ByteBuffer e = ByteBuffer.allocate(ENTRY);
+            e.put(id.getBytes(StandardCharsets.US_ASCII));
+            e.position(KEY_WIDTH);
+            e.putLong(offset);
+            e.putInt(length);
+            entries.add(e.array());
+            offset += length;
+        }
+
+        /** Number of entries in the index once the appender is closed.
+         * @return Returns the number of distinct objects.
+         */
+        int size() {
+            return entries.size();
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.close();
+            entries.sort((x, y) -> Arrays.compare(x, 0, KEY_WIDTH,
+                    y, 0, KEY_WIDTH));
+            ArrayList<byte[]> distinct = new ArrayList<>(entries.size());
+            for (byte[] e : entries) {
+                if (distinct.isEmpty() || Arrays.compare(e, 0, KEY_WIDTH,
+                        distinct.get(distinct.size() - 1), 0,
+                        KEY_WIDTH) != 0) {
+                    distinct.add(e);
+                }
+            }
+            entries.clear();
+            entries.addAll(distinct);
+            writeIndex(entries);
+        }
+    }
+
+    /** Opens the pack for adding objects.
+     * @return Returns an appender, which must be closed.
+     */
+    Appender append() throws IOException {
+        return new Appender();
+    }
+
+    /** Folds every loose object of DIR into the pack and deletes the
+     * loose files once the new index is in place.
+     * @param dir The directory of loose objects named ID.txt.
+     * @return The number of objects folded in.
+     */
+    int repack(File dir) throws IOException {
+        List<String> loose = Utils.plainFilenamesIn(dir);
+        if (loose == null || loose.isEmpty()) {
+            return 0;
+        }
+        load();
+        int before = count;
+        ArrayList<File> folded = new ArrayList<>();
+        Appender appender = append();
+        try (appender) {
+            for (String name : loose) {
+                if (!name.endsWith(".txt")) {
+                    continue;
+                }
+                String id = name.substring(0, name.length() - 4);
+                File f = Utils.join(dir, name);
+                if (id.length() > KEY_WIDTH) {
+                    continue;
+                }
+                folded.add(f);
+                if (!contains(id)) {
+                    appender.add(id, f);
+                }
+            }
+        }
+        for (File f : folded) {
+            f.delete();
+        }
+        return appender.size() - before;
+    }
+
+    /** Replaces the index with ENTRIES, which must be sorted.
+     * @param entries The raw index entries.
+     */
+    private void writeIndex(List<byte[]> entries) throws IOException {
+        File tmp = new File(index.getPath() + ".tmp");
+        ByteBuffer buf = ByteBuffer.allocate(HEADER + entries.size() * ENTRY);
+        buf.putInt(MAGIC);
+        buf.putInt(entries.size());
+        for (byte[] e : entries) {
+            buf.put(e);
+        }
+        Utils.writeContents(tmp, (Object) buf.array());
+        Files.move(tmp.toPath(), index.toPath(),
+                StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+        map = null;
+    }
+
+    /** Binary searches the index.
+     * @param id The object id.
+     * @return The entry number of ID, or -1 if absent.
+     */
+    private int find(String id) {
+        load();
+        byte[] key = id.getBytes(StandardCharsets.US_ASCII);
+        if (key.length > KEY_WIDTH) {
+            return -1;
+        }
+        int lo = 0, hi = count - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int c = compareAt(mid, key);
+            if (c < 0) {
+                lo = mid + 1;
+            } else if (c > 0) {
+                hi = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    /** Compares the id of entry I against KEY, padding KEY with zeros.
+     * @param i The entry number.
+     * @param key The id bytes.
+     * @return Negative, zero or positive as for compareTo.
+     */
+    private int compareAt(int i, byte[] key) {
+        int base = HEADER + i * ENTRY;
+        for (int k = 0; k < KEY_WIDTH; k += 1) {
+            int a = map.get(base + k) & 0xff;
+            int b = k < key.length ? key[k] & 0xff : 0;
+            if (a != b) {
+                return a - b;
+            }
+        }
+        return 0;
+    }
+
+    /** The id of entry I.
+     * @param i The entry number.
+     * @return The id.
+     */
+    private String keyAt(int i) {
+        int base = HEADER + i * ENTRY;
+        int len = 0;
+        while (len < KEY_WIDTH && map.get(base + len) != 0) {
+            len += 1;
+        }
+        byte[] key = new byte[len];
+        map.get(base, key);
+        return new String(key, StandardCharsets.US_ASCII);
+    }
+
+    /** Maps the index file if it has not been mapped yet. Safe to call
+     * from several threads.*/
+    private synchronized void load() {
+        if (map != null) {
+            return;
+        }
+        if (!index.isFile()) {
+            count = 0;
+            map = ByteBuffer.allocate(0);
+            return;
+        }
+        ByteBuffer m;
+        try (FileChannel ch = FileChannel.open(index.toPath())) {
+            m = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        if (m.getInt(0) != MAGIC) {
+            throw Utils.error("Corrupt pack index %s.", index.getName());
+        }
+        count = m.getInt(4);
+        mapped = index.lastModified();
+        map = m;
+    }
+
+    /** LENGTH bytes of the data file from OFFSET. The whole file is
+     * mapped once, and again only once objects have been appended past
+     * the mapped end; a file too large for one buffer is mapped an object
+     * at a time.
+     * @param offset Where the bytes start.
+     * @param length The number of bytes.
+     * @return Returns a read-only buffer of exactly those bytes.
+     */
+    private synchronized ByteBuffer slice(long offset, int length)
+            throws IOException {
+        if (dataMap == null || offset + length > dataMap.capacity()) {
+            try (FileChannel ch = FileChannel.open(data.toPath())) {
+                if (ch.size() > Integer.MAX_VALUE) {
+                    return ch.map(FileChannel.MapMode.READ_ONLY, offset,
+                            length);
+                }
+                dataMap = ch.map(FileChannel.MapMode.READ_ONLY, 0,
+                        ch.size());
+            }
+        }
+        return dataMap.slice((int) offset, length);
+    }
+
+    /** A stream over the bytes of a buffer.*/
+    private static class Slice extends InputStream {
+        /** The bytes not yet read.*/
+        private final ByteBuffer buf;
+
+        /** A stream of the remaining bytes of BUF1.
+         * @param buf1 The buffer.
+         */
+        Slice(ByteBuffer buf1) {
+            buf = buf1;
+        }
+
+        @Override
+        public int read() {
+            return buf.hasRemaining() ? buf.get() & 0xff : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (len == 0) {
+                return 0;
+            } else if (!buf.hasRemaining()) {
+                return -1;
+            }
+            int n = Math.min(len, buf.remaining());
+            buf.get(b, off, n);
+            return n;
+        }
+
+        @Override
+        public long skip(long n) {
+            int k = (int) Math.max(0, Math.min(n, buf.remaining()));
+            buf.position(buf.position() + k);
+            return k;
+        }
+
+        @Override
+        public int available() {
+            return buf.remaining();
+        }
+    }
+
+    /** Maps the index again on next use if another process rewrote it
+     * since it was mapped.
+     */
+    synchronized void refresh() {
+        if (map != null && index.lastModified() != mapped) {
+            map = null;
+        }
+    }
+}
@@ -1,8 +1,17 @@
 package gitlet;
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
-import java.text.SimpleDateFormat;
-import java.util.Date;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
 import java.util.List;
 import java.util.LinkedHashMap;
 import java.util.HashSet;
@@ -10,6 +19,15 @@ import java.util.HashMap;
 import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 
 
@@ -19,10 +37,12 @@ import java.util.Map;
  */
 public class Repo {
 
-    /** The current working dir file.*/
-    static final File CWD = new File(System.getProperty("user.dir"));
+    /** The current working dir file, or the gitlet.dir property if set,
+     * so that benchmarks can run against a generated repository.*/
+    static final File CWD = new File(System.getProperty("gitlet.dir",
+            System.getProperty("user.dir")));
     /** The gitlet file.*/
-    static final File GITLET = new File("./.gitlet");
+    static final File GITLET = Utils.join(CWD, ".gitlet");
     /** The commit file.*/
     static final File COMMITS = new File(GITLET, "commits");
     /** The blobs file.*/
@@ -35,6 +55,65 @@ public class Repo {
     static final File ACTIVEBRANCH = Utils.join(GITLET, "activeBranch.txt");
     /** The staging file.*/
     static final File STAGINGFILE = Utils.join(GITLET, "stagings.txt");
+    /** The stat cache of working files.*/
+    static final File INDEXFILE = Utils.join(GITLET, "index");
+    /** The packs file.*/
+    static final File PACKS = Utils.join(GITLET, "packs");
+    /** The pack of commits.*/
+    static final Pack COMMIT_PACK = new Pack(PACKS, "commits");
+    /** The pack of blobs.*/
+    static final Pack BLOB_PACK = new Pack(PACKS, "blobs");
+    /** The trees file.*/
+    static final File TREEDIR = Utils.join(GITLET, "trees");
+    /** The pack of trees.*/
+    static final Pack TREE_PACK = new Pack(PACKS, "trees");
+    /** The trees of commits.*/
+    static final TreeStore TREES = new TreeStore(TREEDIR, TREE_PACK);
+    /** The config file.*/
+    static final File CONFIGFILE = Utils.join(GITLET, "config");
+    /** The repository settings.*/
+    private static final Config CONFIG = new Config(CONFIGFILE);
+    /** The blob store; delta.depth sets the longest delta chain, and
+     * files of at least blob.rawsize bytes are stored uncompressed.*/
+    private static BlobStore blobStore;
+    /** The delta.depth and blob.rawsize the blob store was made with.*/
+    private static List<Integer> blobSettings;
+    /** How log and global-log print dates.*/
+    static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter
+            .ofPattern("EEE MMM dd kk:mm:ss yyyy Z")
+            .withZone(ZoneId.systemDefault());
+    /** Decoded commits; cache.commits sets its size in bytes.*/
+    private static CommitCache commitCache;
+    /** The cache.commits the commit cache was made with.*/
+    private static int commitSettings;
+
+    static {
+        configure();
+    }
+    /** The commit graph file.*/
+    static final File GRAPHFILE = Utils.join(GITLET, "commit-graph");
+    /** The commit graph, once loaded.*/
+    private static CommitGraph graph;
+    /** The commit id index file.*/
+    static final File IDINDEX = Utils.join(GITLET, "commit-ids");
+    /** The commit id index, once loaded.*/
+    private static IdIndex idIndex;
+    /** The staging area last read or written.*/
+    private static final FileCache<StagingArea> STAGING = new FileCache<>(
+            STAGINGFILE, f -> Utils.readObject(f, StagingArea.class));
+    /** Whether staging area writes wait for flushStaging.*/
+    private static boolean deferStaging;
+    /** The staging area not yet written, while writes are deferred.*/
+    private static StagingArea pendingStaging;
+    /** The branch heads and active branch name last read, by file.*/
+    private static final ConcurrentHashMap<File, FileCache<String>> REFS =
+            new ConcurrentHashMap<>();
+    /** The directory of the commit message index.*/
+    static final File MESSAGES = Utils.join(GITLET, "messages");
+    /** The commit message index, once loaded.*/
+    private static MessageIndex messageIndex;
+    /** The journal of every commit made, read by global-log.*/
+    static final File JOURNALFILE = Utils.join(GLOBALLOG, "journal");
 
     /** The Repo file.*/
     public Repo() throws IOException {
@@ -68,17 +147,26 @@ public class Repo {
             GITLET.mkdir();
             COMMITS.mkdir();
             BLOBS.mkdir();
+            TREEDIR.mkdir();
             BRANCHES.mkdir();
             GLOBALLOG.mkdir();
+            PACKS.mkdir();
             StagingArea staging = new StagingArea();
             STAGINGFILE.createNewFile();
-            Utils.writeObject(STAGINGFILE, staging);
+            writeStaging(staging);
         }
 
         Commit initial = new Commit("initial commit", null, null);
-        String shaCode = Utils.sha1(Utils.serialize(initial));
+        initial.setTree(TREES.write(Map.of()));
+        byte[] encoded = initial.encode();
+        String shaCode = Utils.sha1(encoded);
         File commit = Utils.join(COMMITS, shaCode + ".txt");
-        Utils.writeObject(commit, initial);
+        Utils.writeContents(commit, encoded);
+        commitGraph().append(shaCode, null, null);
+        new IdIndex(IDINDEX).rewrite(List.of(shaCode));
+        MESSAGES.mkdir();
+        messageIndex().add(shaCode, initial.getMessage());
+        journalCommit(shaCode, initial);
         File branch = Utils.join(BRANCHES, "master.txt");
         File activeBranch = Utils.join(GITLET, "activeBranch.txt");
         branch.createNewFile();
@@ -104,34 +192,111 @@ public class Repo {
      * added, and then changed back). The file will no longer be
      * staged for removal (see gitlet rm),
      * if it was at the time of the command.
-     * @param fileName This is file name.
+     * Any number of files may be given; directories are added
+     * recursively, leaving out files that .gitletignore ignores. Files
+     * are hashed in parallel, and the staging area is read and written
+     * once for the whole command.
+     * @param fileNames This is file names.
      */
-    public void add(String fileName) throws IOException {
-        File addFile = Utils.join(CWD, fileName);
-        if (!addFile.exists()) {
-            System.out.println("File does not exist.");
-        } else {
-            String activeBranchName = Utils.readContentsAsString(ACTIVEBRANCH);
-            File active = Utils.join(BRANCHES, activeBranchName + ".txt");
-            String headName = Utils.readContentsAsString(active);
-            File headFile = Utils.join(COMMITS, headName + ".txt");
-            Commit head = Utils.readObject(headFile, Commit.class);
-            String blob = Utils.readContentsAsString(addFile);
-            String bSha = Utils.sha1(blob) + Utils.sha1(fileName);
-            File blobFile = Utils.join(BLOBS, bSha + ".txt");
-            StagingArea stag = Utils.readObject(STAGINGFILE, StagingArea.class);
-            LinkedHashMap<String, String> headHash = head.getHashMap();
-            if (headHash != null && bSha.equals(headHash.get(fileName))) {
+    public void add(String... fileNames) throws IOException {
+        ArrayList<String> names = new ArrayList<>();
+        List<String> listing = null;
+        for (String fileName : fileNames) {
+            File addFile = Utils.join(CWD, fileName);
+            if (!addFile.exists()) {
+                System.out.println("File does not exist.");
+            } else if (addFile.isDirectory()) {
+                if (listing == null) {
+                    listing = new WorkTree(CWD).list();
+                }
+                String dir = relativeName(addFile.toPath());
+                String prefix = dir.isEmpty() ? "" : dir + "/";
+                for (String name : listing) {
+                    if (name.startsWith(prefix)) {
+                        names.add(name);
+                    }
+                }
+            } else {
+                names.add(relativeName(addFile.toPath()));
+            }
+        }
+        if (names.isEmpty()) {
+            return;
+        }
+        String activeBranchName = readRef(ACTIVEBRANCH);
+        File active = Utils.join(BRANCHES, activeBranchName + ".txt");
+        String headName = readRef(active);
+        Commit head = getCommit(headName);
+        StatIndex index = new StatIndex(INDEXFILE);
+        HashMap<String, String> shas;
+        Stats.Timer t = Stats.time(Stats.Phase.WORKTREE);
+        try {
+            shas = storeAll(names, head, index);
+        } finally {
+            t.end();
+        }
+        StagingArea stag = readStaging();
+        for (String fileName : names) {
+            String headSha = head.get(fileName);
+            String bSha = shas.get(fileName);
+            if (headSha != null
+                    && bSha.equals(BlobStore.contentId(headSha))) {
                 stag.removeAdd(fileName);
             } else {
-                if (!blobFile.exists()) {
-                    Utils.writeContents(blobFile, blob);
-                }
                 stag.add(fileName, bSha);
             }
             stag.removeRemove(fileName);
-            Utils.writeObject(STAGINGFILE, stag);
         }
+        writeStaging(stag);
+        index.save();
+    }
+
+    /** Stores the blobs of working files, hashing the files whose stat
+     * data changed on a pool of worker threads.
+     * @param names This is the file names.
+     * @param head This is HEAD.
+     * @param index This is the stat cache.
+     * @return Returns the blob id of each file.*/
+    private static HashMap<String, String> storeAll(List<String> names,
+            Commit head, StatIndex index)
+        throws IOException {
+        HashMap<String, String> shas = new HashMap<>();
+        HashMap<String, Future<String>> pending = new HashMap<>();
+        int threads = Runtime.getRuntime().availableProcessors();
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            for (String fileName : names) {
+                File addFile = Utils.join(CWD, fileName);
+                String bSha = index.lookup(fileName, addFile);
+                if (bSha != null && blobStore.contains(bSha)) {
+                    shas.put(fileName, bSha);
+                } else if (!pending.containsKey(fileName)) {
+                    String headSha = head.get(fileName);
+                    pending.put(fileName, pool.submit(() ->
+                            blobStore.write(addFile, headSha)));
+                }
+            }
+            for (Map.Entry<String, Future<String>> e : pending.entrySet()) {
+                String bSha = e.getValue().get();
+                shas.put(e.getKey(), bSha);
+                index.update(e.getKey(), Utils.join(CWD, e.getKey()), bSha);
+            }
+        } catch (ExecutionException excp) {
+            throw new IOException(excp.getCause().getMessage());
+        } catch (InterruptedException excp) {
+            throw new IOException(excp.getMessage());
+        } finally {
+            pool.shutdownNow();
+        }
+        return shas;
+    }
+
+    /** The name of a working file relative to the working directory.
+     * @param p This is the file's path.
+     * @return Returns the name, with / between directories.*/
+    private static String relativeName(Path p) {
+        Path rel = CWD.toPath().relativize(p.toAbsolutePath().normalize());
+        return rel.toString().replace(File.separatorChar, '/');
     }
 
     /**
@@ -157,7 +322,7 @@ public class Repo {
      * @param message This is message.
      */
     public void commit(String message) throws IOException {
-        StagingArea staging = Utils.readObject(STAGINGFILE, StagingArea.class);
+        StagingArea staging = readStaging();
         if (message.length() < 1) {
             System.out.println("Please enter a commit message.");
         }
@@ -166,21 +331,73 @@ public class Repo {
         if (stageAdd.isEmpty() && stageRem.isEmpty()) {
             System.out.println("No changes added to the commit.");
         } else {
-            String activeBranchName = Utils.readContentsAsString(ACTIVEBRANCH);
+            String activeBranchName = readRef(ACTIVEBRANCH);
             File active = Utils.join(BRANCHES, activeBranchName + ".txt");
-            String parentName = Utils.readContentsAsString(active);
-            File parentFile = Utils.join(COMMITS, parentName + ".txt");
-            Commit parent = Utils.readObject(parentFile, Commit.class);
+            String parentName = readRef(active);
+            Commit parent = getCommit(parentName);
             Commit curr = new Commit(message, parentName, null);
-            curr.combine(parent);
-            curr.editHash(staging);
-            String shaCode1 = Utils.sha1(Utils.serialize(curr));
+            curr.setTree(TREES.update(treeOf(parent), changes(staging)));
+            byte[] encoded = curr.encode();
+            String shaCode1 = Utils.sha1(encoded);
             File commit = Utils.join(COMMITS, shaCode1 + ".txt");
             commit.createNewFile();
-            Utils.writeObject(commit, curr);
+            Utils.writeContents(commit, encoded);
+            Stats.Timer t = Stats.time(Stats.Phase.INDEXES);
+            try {
+                graphIndex(parentName);
+                commitGraph().append(shaCode1, parentName, null);
+                commitIndex().add(shaCode1);
+                messageIndex().add(shaCode1, message);
+                journalCommit(shaCode1, curr);
+            } finally {
+                t.end();
+            }
             Utils.writeContents(active, shaCode1);
             staging.clear();
-            Utils.writeObject(STAGINGFILE, staging);
+            writeStaging(staging);
+        }
+    }
+
+    /** The root tree of C, storing one for a commit made before trees.
+     * @param c This is the commit.
+     * @return Returns the id of its root tree.*/
+    private static String treeOf(Commit c) {
+        return c.getTree() != null ? c.getTree()
+                : TREES.write(c.getHashMap());
+    }
+
+    /** The changes STAGING makes, for TreeStore.update.
+     * @param staging This is the staging area.
+     * @return Returns the blob id of each file added, and null for each
+     * file removed.*/
+    private static HashMap<String, String> changes(StagingArea staging) {
+        HashMap<String, String> result = new HashMap<>();
+        for (String s : staging.getRemoveFiles().keySet()) {
+            result.put(s, null);
+        }
+        result.putAll(staging.getAddFiles());
+        return result;
+    }
+
+    /** Calls V with each file whose blob differs between A and B, in
+     * path order. Only subdirectories that differ are read, unless one
+     * of the commits was made before trees.
+     * @param a This is the first commit.
+     * @param b This is the second commit.
+     * @param v This is the visitor.*/
+    private static void diff(Commit a, Commit b, TreeStore.Visitor v) {
+        if (a.getTree() != null && b.getTree() != null) {
+            TREES.diff(a.getTree(), b.getTree(), v);
+            return;
+        }
+        Map<String, String> x = a.getHashMap();
+        Map<String, String> y = b.getHashMap();
+        TreeSet<String> names = new TreeSet<>(x.keySet());
+        names.addAll(y.keySet());
+        for (String name : names) {
+            if (!Objects.equals(x.get(name), y.get(name))) {
+                v.visit(name, x.get(name), y.get(name));
+            }
         }
     }
 
@@ -194,29 +411,27 @@ public class Repo {
      */
     public void remove(String fileName) {
         File rmFile = Utils.join(CWD, fileName);
-        String activeBranchName = Utils.readContentsAsString(ACTIVEBRANCH);
+        String activeBranchName = readRef(ACTIVEBRANCH);
         File active = Utils.join(BRANCHES, activeBranchName + ".txt");
-        String headName = Utils.readContentsAsString(active);
-        File headFile = Utils.join(COMMITS, headName + ".txt");
-        Commit head = Utils.readObject(headFile, Commit.class);
-        StagingArea staging = Utils.readObject(STAGINGFILE, StagingArea.class);
+        String headName = readRef(active);
+        Commit head = getCommit(headName);
+        StagingArea staging = readStaging();
         LinkedHashMap<String, String> sAdd = staging.getAddFiles();
-        LinkedHashMap<String, String> headHash = head.getHashMap();
-        if (!headHash.containsKey(fileName) && !sAdd.containsKey(fileName)) {
+        if (head.get(fileName) == null && !sAdd.containsKey(fileName)) {
             System.out.print("No reason to remove the file.");
             return;
         } else {
             if (!rmFile.exists()) {
                 staging.remove(fileName);
-                Utils.writeObject(STAGINGFILE, staging);
+                writeStaging(staging);
             } else {
                 String blobSha = Utils.sha1(Utils.readContents(rmFile));
                 staging.removeAdd(fileName);
-                if (head.getHashMap().containsKey(fileName)) {
+                if (head.get(fileName) != null) {
                     staging.remove(fileName, blobSha);
-                    Utils.restrictedDelete(fileName);
+                    WorkTree.delete(CWD, fileName);
                 }
-                Utils.writeObject(STAGINGFILE, staging);
+                writeStaging(staging);
 
             }
         }
@@ -236,30 +451,57 @@ public class Repo {
      * commit was made, and the commit message. Here is an
      * example of the exact format it should follow:
      */
-    public void log() {
-        String activeBranchName = Utils.readContentsAsString(ACTIVEBRANCH);
+    public void log() throws IOException {
+        log(-1, null, false);
+    }
+
+    /** Prints at most LIMIT commits of the current branch's history,
+     * newest first, stopping at the first commit older than SINCE. Merge
+     * commits are dated at the epoch, so they never stop the walk.
+     * @param limit This is the most commits to print, or -1 for all.
+     * @param since This is the oldest time to print, or null.
+     * @param oneline This is whether to print one line per commit.
+     */
+    public void log(int limit, Instant since, boolean oneline)
+        throws IOException {
+        String activeBranchName = readRef(ACTIVEBRANCH);
         File active = Utils.join(BRANCHES, activeBranchName + ".txt");
-        String commitName = Utils.readContentsAsString(active);
-        while (commitName != null) {
-            File comFile = Utils.join(COMMITS, commitName + ".txt");
-            Commit curr = Utils.readObject(comFile, Commit.class);
-            System.out.println("===");
-            System.out.println("commit " + Utils.sha1(Utils.serialize(curr)));
-            String m = "Merge: ";
-            if (curr.getParent2() != null) {
-                String gP2 = curr.getParent2().substring(0, 7);
-                String gP1 = curr.getParent().substring(0, 7);
-                System.out.println(m + gP1 + " " + gP2);
-            }
-            Date date = curr.getTimestamp();
-            String ptn = "EEE MMM dd kk:mm:ss yyyy ZZZZZ";
-            SimpleDateFormat dateFormat = new SimpleDateFormat(ptn);
-            String frm = dateFormat.format(date);
-            System.out.println("Date: " + frm);
-            System.out.println(curr.getMessage());
-            System.out.println();
+        String commitName = readRef(active);
+        BufferedWriter out = new BufferedWriter(
+                new OutputStreamWriter(System.out), Utils.BUFFER_SIZE);
+        for (int n = 0; commitName != null && n != limit;) {
+            Commit curr = getCommit(commitName);
+            Instant time = curr.getTimestamp().toInstant();
+            if (since != null && time.isBefore(since)) {
+                if (curr.getParent2() == null) {
+                    break;
+                }
+            } else if (oneline) {
+                String m = curr.getMessage();
+                int nl = m.indexOf('\n');
+                out.write(commitName.substring(0, 7));
+                out.write(' ');
+                out.write(nl < 0 ? m : m.substring(0, nl));
+                out.write('\n');
+                n += 1;
+            } else {
+                out.write("===\ncommit ");
+                out.write(commitName);
+                out.write('\n');
+                if (curr.getParent2() != null) {
+                    out.write("Merge: " + curr.getParent().substring(0, 7)
+                            + " " + curr.getParent2().substring(0, 7) + "\n");
+                }
+                out.write("Date: ");
+                out.write(DATE_FORMAT.format(time));
+                out.write('\n');
+                out.write(curr.getMessage());
+                out.write("\n\n");
+                n += 1;
+            }
             commitName = curr.getParent();
         }
+        out.flush();
     }
 
     /**  user has not already done so (do not remove it unless it
@@ -267,24 +509,20 @@ public class Repo {
      * @param fileName This is fileNmae.
      */
     public void checkout1(String fileName) throws IOException {
-        String activeBranchName = Utils.readContentsAsString(ACTIVEBRANCH);
+        String activeBranchName = readRef(ACTIVEBRANCH);
         File active = Utils.join(BRANCHES, activeBranchName + ".txt");
         if (!active.exists()) {
             System.out.println("No such branch exists.");
             return;
         }
-        String headName = Utils.readContentsAsString(active);
-        File head = Utils.join(COMMITS, headName + ".txt");
-        Commit com = Utils.readObject(head, Commit.class);
-        LinkedHashMap<String, String> hash = com.getHashMap();
-        String blobFileName = hash.get(fileName);
-        File blobFile = Utils.join(BLOBS, blobFileName + ".txt");
+        String headName = readRef(active);
+        Commit com = getCommit(headName);
+        String blobFileName = com.get(fileName);
         File f = Utils.join(CWD, fileName);
         if (!f.exists()) {
             f.createNewFile();
         }
-        String blobContents = Utils.readContentsAsString(blobFile);
-        Utils.writeContents(f, blobContents);
+        writeBlob(blobFileName, f);
     }
 
     /**
@@ -296,36 +534,25 @@ public class Repo {
      * @param commitID This is commit id.
      */
     public void checkout2(String commitID, String fileName) throws IOException {
-        String activeBranchName = Utils.readContentsAsString(ACTIVEBRANCH);
+        String activeBranchName = readRef(ACTIVEBRANCH);
         File active = Utils.join(BRANCHES, activeBranchName + ".txt");
-        String headName = Utils.readContentsAsString(active);
-        File headFile = Utils.join(COMMITS, headName + ".txt");
-        Commit head = Utils.readObject(headFile, Commit.class);
-        if (!head.getHashMap().containsKey(fileName)) {
+        String headName = readRef(active);
+        Commit head = getCommit(headName);
+        if (head.get(fileName) == null) {
             System.out.print("File does not exist in that commit.");
             return;
         }
-        List<String> commitFiles = Utils.plainFilenamesIn(COMMITS);
-        for (String s : commitFiles) {
-            if (s.contains(commitID)) {
-                commitID = s;
-            }
-        }
-        commitID = commitID.substring(0, commitID.length() - 4);
-        File commitFile = Utils.join(COMMITS, commitID + ".txt");
-        if (!commitFile.exists()) {
-            System.out.print("No commit with that id exists.");
+        commitID = resolveCommit(commitID);
+        if (commitID == null) {
             return;
         }
-        Commit comOb = Utils.readObject(commitFile, Commit.class);
-        LinkedHashMap<String, String> hash = comOb.getHashMap();
-        String blobFileName = hash.get(fileName);
-        File blobFile = Utils.join(BLOBS, blobFileName + ".txt");
+        Commit comOb = getCommit(commitID);
+        String blobFileName = comOb.get(fileName);
         File f = Utils.join(CWD, fileName);
         if (!f.exists()) {
             f.createNewFile();
         }
-        Utils.writeContents(f, Utils.readContents(blobFile));
+        writeBlob(blobFileName, f);
     }
 
     /**
@@ -339,7 +566,7 @@ public class Repo {
      * @param branchName This is branch name.
      */
     public void checkout3(String branchName) throws IOException {
-        String activeBranchName = Utils.readContentsAsString(ACTIVEBRANCH);
+        String activeBranchName = readRef(ACTIVEBRANCH);
         if (activeBranchName.equals(branchName)) {
             System.out.println("No need to checkout the current branch.");
             return;
@@ -350,43 +577,74 @@ public class Repo {
             return;
         }
         File active = Utils.join(BRANCHES, activeBranchName + ".txt");
-        String headName = Utils.readContentsAsString(active);
-        File headFile = Utils.join(COMMITS, headName + ".txt");
-        Commit head = Utils.readObject(headFile, Commit.class);
-        String commitName = Utils.readContentsAsString(branch);
-        File commit = Utils.join(COMMITS, commitName + ".txt");
-        Commit com = Utils.readObject(commit, Commit.class);
-        StagingArea staging = Utils.readObject(STAGINGFILE, StagingArea.class);
+        String headName = readRef(active);
+        Commit head = getCommit(headName);
+        String commitName = readRef(branch);
+        Commit com = getCommit(commitName);
+        StagingArea staging = readStaging();
 
-        for (File file : CWD.listFiles()) {
-            LinkedHashMap<String, String> hHash = head.getHashMap();
-            LinkedHashMap<String, String> cHash = com.getHashMap();
-            String n = file.getName();
-            if (!hHash.containsKey(n) && cHash.containsKey(n)) {
-                System.out.print("There is an untracked file in the "
-                        + "way; delete it, or add and commit it first.");
-            }
+        if (!materialize(head, com)) {
+            return;
         }
+        Utils.writeContents(ACTIVEBRANCH, branchName);
+        staging.clear();
+        writeStaging(staging);
+    }
 
-        for (String fileName : com.getHashMap().keySet()) {
-            File blobFile = Utils.join(BLOBS,
-                    com.getHashMap().get(fileName) + ".txt");
-            File cwdFile = Utils.join(CWD, fileName);
-            if (!cwdFile.exists()) {
-                cwdFile.createNewFile();
+    /** Replaces the files of HEAD in the working directory with those of
+     * COM, writing files in parallel and deleting files COM does not track
+     * once every write has finished. Only the paths that differ between
+     * the commits are visited, found by comparing their trees, which skips
+     * every directory the commits share; files on other paths are left as
+     * they are. Warns of each file COM adds that is already in the working
+     * directory, untracked. Prints each file that could not be written,
+     * and the write rate when checkout.report is true.
+     * @param head This is head.
+     * @param com This is the commit to check out.
+     * @return Returns true if every file was written.*/
+    private static boolean materialize(Commit head, Commit com) {
+        Stats.Timer t = Stats.time(Stats.Phase.WORKTREE);
+        try {
+            LinkedHashMap<String, String> writes = new LinkedHashMap<>();
+            ArrayList<String> deletes = new ArrayList<>();
+            diff(head, com, (name, before, after) -> {
+                boolean exists = Utils.join(CWD, name).isFile();
+                if (before == null && exists) {
+                    System.out.print("There is an untracked file in the "
+                            + "way; delete it, or add and commit it first.");
+                }
+                if (after != null) {
+                    writes.put(name, after);
+                } else if (exists) {
+                    deletes.add(name);
+                }
+            });
+            StatIndex index = new StatIndex(INDEXFILE);
+            Materializer.Result result =
+                    new Materializer(blobStore).run(CWD, writes, deletes);
+            for (Map.Entry<String, String> e : writes.entrySet()) {
+                if (!result.failures().containsKey(e.getKey())) {
+                    index.update(e.getKey(), Utils.join(CWD, e.getKey()),
+                            BlobStore.contentId(e.getValue()));
+                }
             }
-            String blobString = Utils.readContentsAsString(blobFile);
-            Utils.writeContents(cwdFile, blobString);
-        }
-        for (File file : CWD.listFiles()) {
-            if (head.getHashMap().containsKey(file.getName())
-                    && !com.getHashMap().containsKey(file.getName())) {
-                Utils.restrictedDelete(file);
+            for (Map.Entry<String, String> e : result.failures().entrySet()) {
+                System.out.println("Could not write " + e.getKey() + ": "
+                        + e.getValue());
+            }
+            if (result.ok()) {
+                for (String name : deletes) {
+                    index.remove(name);
+                }
+            }
+            index.save();
+            if (CONFIG.get("checkout.report", "false").equals("true")) {
+                System.err.println(result);
             }
+            return result.ok();
+        } finally {
+            t.end();
         }
-        Utils.writeContents(ACTIVEBRANCH, branchName);
-        staging.clear();
-        Utils.writeObject(STAGINGFILE, staging);
     }
 
     /**
@@ -395,21 +653,19 @@ public class Repo {
      * is a useful method in gitlet.Utils that will help you iterate
      * over files within a directory.
      */
-    public void globalLog() {
-        List<String> glog = Utils.plainFilenamesIn(COMMITS);
-        for (String s : glog) {
-            File commit = Utils.join(COMMITS, s);
-            Commit com = Utils.readObject(commit, Commit.class);
-            System.out.println("===");
-            System.out.println("commit " + Utils.sha1(Utils.serialize(com)));
-            Date date = com.getTimestamp();
-            String ptn = "EEE MMM dd kk:mm:ss yyyy ZZZZZ";
-            SimpleDateFormat dateFormat = new SimpleDateFormat(ptn);
-            String frm = dateFormat.format(date);
-            System.out.println("Date: " + frm);
-            System.out.println(com.getMessage());
-            System.out.println();
-        }
+    public void globalLog() throws IOException {
+        BufferedWriter out = new BufferedWriter(
+                new OutputStreamWriter(System.out), Utils.BUFFER_SIZE);
+        journal().read((id, time, message) -> {
+            out.write("===\ncommit ");
+            out.write(id);
+            out.write("\nDate: ");
+            out.write(DATE_FORMAT.format(Instant.ofEpochMilli(time)));
+            out.write("\n");
+            out.write(message);
+            out.write("\n\n");
+        });
+        out.flush();
     }
 
     /**
@@ -421,14 +677,12 @@ public class Repo {
      * @param msg This is message.
      */
     public void find(String msg) {
-        List<String> glog = Utils.plainFilenamesIn(COMMITS);
         boolean commitE = false;
-        for (String s : glog) {
-            File commit = Utils.join(COMMITS, s);
-            Commit com = Utils.readObject(commit, Commit.class);
+        for (String s : messageIndex().exact(msg)) {
+            Commit com = getCommit(s);
             if (com.getMessage().equals(msg)) {
                 commitE = true;
-                System.out.println(Utils.sha1(Utils.serialize(com)));
+                System.out.println(s);
             }
         }
         if (!commitE) {
@@ -437,16 +691,52 @@ public class Repo {
         }
     }
 
+    /** Prints the ids of all commits whose message contains every word
+     * of WORDS, ignoring case and punctuation.
+     * @param words This is the words to look for.
+     */
+    public void findGrep(String words) {
+        Set<String> wanted = MessageIndex.tokens(words);
+        Set<String> found = null;
+        for (String w : wanted) {
+            Set<String> ids = messageIndex().word(w);
+            if (found == null) {
+                found = ids;
+            } else {
+                found.retainAll(ids);
+            }
+        }
+        boolean commitE = false;
+        if (found != null) {
+            for (String s : found) {
+                Set<String> have =
+                        MessageIndex.tokens(getCommit(s).getMessage());
+                if (have.containsAll(wanted)) {
+                    commitE = true;
+                    System.out.println(s);
+                }
+            }
+        }
+        if (!commitE) {
+            System.out.println("Found no commit with that message");
+        }
+    }
+
     /**
      * Displays what branches currently exist, and marks the
      * current branch with a *.
      * Also displays what files have been staged for addition
      * or removal. An example
      * of the exact format it should follow is as follows.
+     * Files in subdirectories are shown by their paths. The working
+     * directory is only read when status.files is true: then the
+     * modified, deleted and untracked files are listed too, from one
+     * listing of the working directory that leaves out what
+     * .gitletignore ignores, hashing only files whose stat data changed.
      */
     public void status() {
         System.out.println("=== Branches ===");
-        String activeBranchName = Utils.readContentsAsString(ACTIVEBRANCH);
+        String activeBranchName = readRef(ACTIVEBRANCH);
         String branchName = "";
         System.out.println("*" + activeBranchName);
         for (File branch : BRANCHES.listFiles()) {
@@ -457,7 +747,7 @@ public class Repo {
             }
         }
         System.out.println();
-        StagingArea staging = Utils.readObject(STAGINGFILE, StagingArea.class);
+        StagingArea staging = readStaging();
         System.out.println("=== Staged Files ===");
         if (!(staging == null) && !staging.getAddFiles().isEmpty()) {
             for (String st : staging.getAddFiles().keySet()) {
@@ -473,57 +763,130 @@ public class Repo {
         }
         System.out.println();
         System.out.println("=== Modifications Not Staged For Commit ===");
-//        File active = Utils.join(BRANCHES, activeBranchName + ".txt");
-//        String headName = Utils.readContentsAsString(active);
-//        File headFile = Utils.join(COMMITS, headName + ".txt");
-//        Commit head = Utils.readObject(headFile, Commit.class);
-//        HashMap<String, String> headF = head.getHashMap();
-//        String sha, remF, bl = "";
-//        boolean h, st;
-//        for (File file : CWD.listFiles()) {
-//            if (file.isFile()) {
-//                sha= Utils.sha1(Utils.readContentsAsString(file));
-//                remF = file.getName();
-//                h = headF.containsKey(remF);
-//                st = staging.getAddFiles().containsValue(sha) || staging.getRemoveFiles().containsValue(sha);
-//                if (h && !st) {
-//                    for (File blobF : BLOBS.listFiles()) {
-//                        bl = blobF.getName();
-//                        bl = bl.substring(0, bl.length() - 4);
-//                        if (bl.equals(sha)) {
-//                            break;
-//                        }
-//                    }
-//                    if(!bl.equals(sha)) {
-//                        System.out.println(file.getName() + " (modified)");
-//                    }
-//                }
-//            }
-//        }
-//        String fileS = "";
-//        for (String s : headF.keySet()) {
-//            for (File f : CWD.listFiles()) {
-//                fileS = f.getName();
-//                if (s.equals(fileS)) {
-//                    break;
-//                }
-//            }
-//            if (!s.equals(fileS) && !staging.getRemoveFiles().containsKey(s)) {
-//                System.out.println(s + " (deleted)");
-//            }
-//        }
+        if (!CONFIG.get("status.files", "false").equals("true")) {
+            System.out.println();
+            System.out.println("=== Untracked Files ===");
+            return;
+        }
+        File active = Utils.join(BRANCHES, activeBranchName + ".txt");
+        Commit head = getCommit(readRef(active));
+        Map<String, String> headF = head.getHashMap();
+        LinkedHashMap<String, String> added = staging.getAddFiles();
+        LinkedHashMap<String, String> removed = staging.getRemoveFiles();
+        StatIndex index = new StatIndex(INDEXFILE);
+        List<String> listing = new WorkTree(CWD).list();
+        HashSet<String> present = new HashSet<>(listing);
+        TreeMap<String, String> changes = new TreeMap<>();
+        TreeSet<String> candidates = new TreeSet<>(headF.keySet());
+        candidates.addAll(added.keySet());
+        Stats.Timer t = Stats.time(Stats.Phase.WORKTREE);
+        try {
+            for (String name : candidates) {
+                File f = Utils.join(CWD, name);
+                String staged = added.get(name);
+                String expect = staged != null ? staged : headF.get(name);
+                if (!present.contains(name) && !f.isFile()) {
+                    if (staged != null || !removed.containsKey(name)) {
+                        changes.put(name, " (deleted)");
+                    }
+                } else if (staged != null || !removed.containsKey(name)) {
+                    String now = index.contentId(name, f);
+                    if (!now.equals(BlobStore.contentId(expect))) {
+                        changes.put(name, " (modified)");
+                    }
+                }
+            }
+        } finally {
+            t.end();
+        }
+        for (Map.Entry<String, String> e : changes.entrySet()) {
+            System.out.println(e.getKey() + e.getValue());
+        }
         System.out.println();
         System.out.println("=== Untracked Files ===");
-//        for (File f : CWD.listFiles()) {
-//            if (f.isFile()) {
-//                remF = f.getName();
-//                h = headF.containsKey(remF);
-//                st = staging.getAddFiles().containsValue(remF) || staging.getRemoveFiles().containsValue(remF);
-//                if (!h && !st) {
-//                    System.out.println(remF);
-//                }
-//            }
-      //  }
+        for (String name : listing) {
+            if (!added.containsKey(name) && (!headF.containsKey(name)
+                    || removed.containsKey(name))) {
+                System.out.println(name);
+            }
+        }
+        index.save();
+    }
+
+    /**
+     * Prints the changes to files in unified format. With no operands,
+     * from HEAD to the working directory, for each file HEAD tracks or
+     * that is staged for addition; with --staged or --cached, from HEAD
+     * to the staging area; with two commits, from the first to the
+     * second. Files whose blobs are the same on both sides are skipped
+     * without reading them, and working files whose stat data is
+     * unchanged are not hashed.
+     * @param args This is the operands.
+     */
+    public void diff(String... args) throws IOException {
+        TreeMap<String, String[]> files = new TreeMap<>();
+        if (args.length == 2) {
+            String a = resolveCommit(args[0]);
+            String b = a == null ? null : resolveCommit(args[1]);
+            if (b == null) {
+                return;
+            }
+            diff(getCommit(a), getCommit(b), (name, before, after) ->
+                    files.put(name, new String[] {before, after}));
+        } else if (args.length > 1 || args.length == 1
+                && !args[0].equals("--staged") && !args[0].equals("--cached")) {
+            System.out.println("Incorrect operands.");
+            return;
+        }
+        File active = Utils.join(BRANCHES, readRef(ACTIVEBRANCH) + ".txt");
+        Commit head = getCommit(readRef(active));
+        StagingArea staging = readStaging();
+        if (args.length == 1) {
+            for (Map.Entry<String, String> e : changes(staging).entrySet()) {
+                String before = head.get(e.getKey());
+                String after = e.getValue();
+                if (before == null || after == null
+                        || !BlobStore.contentId(before).equals(after)) {
+                    files.put(e.getKey(), new String[] {before, after});
+                }
+            }
+        }
+        BufferedOutputStream out =
+                new BufferedOutputStream(System.out, Utils.BUFFER_SIZE);
+        Diff diff = new Diff(out);
+        if (args.length != 0) {
+            for (Map.Entry<String, String[]> e : files.entrySet()) {
+                diff.file(e.getKey(), blob(e.getValue()[0]),
+                        blob(e.getValue()[1]));
+            }
+            out.flush();
+            return;
+        }
+        Map<String, String> headF = head.getHashMap();
+        TreeSet<String> names = new TreeSet<>(headF.keySet());
+        names.addAll(staging.getAddFiles().keySet());
+        StatIndex index = new StatIndex(INDEXFILE);
+        for (String name : names) {
+            String before = headF.get(name);
+            File f = Utils.join(CWD, name);
+            if (!f.isFile()) {
+                if (before != null) {
+                    diff.file(name, blob(before), null);
+                }
+            } else if (before == null || !BlobStore.contentId(before)
+                    .equals(index.contentId(name, f))) {
+                diff.file(name, blob(before), () -> new FileInputStream(f));
+            }
+        }
+        out.flush();
+        index.save();
+    }
+
+    /** The blob ID as a version of a file for Diff.
+     * @param id This is the blob id, or null.
+     * @return Returns the version, or null if ID is null.*/
+    private static Diff.Source blob(String id) {
+        return id == null ? null : () -> blobStore.open(id);
     }
 
     /**
@@ -545,9 +908,9 @@ public class Repo {
             return;
         } else {
             branch.createNewFile();
-            String activeBranchName = Utils.readContentsAsString(ACTIVEBRANCH);
+            String activeBranchName = readRef(ACTIVEBRANCH);
             File branchFile = Utils.join(BRANCHES, activeBranchName + ".txt");
-            Utils.writeContents(branch, Utils.readContentsAsString(branchFile));
+            Utils.writeContents(branch, readRef(branchFile));
         }
     }
 
@@ -565,7 +928,7 @@ public class Repo {
             System.out.println("A branch with that name does not exist.");
             return;
         }
-        String activeBranchName = Utils.readContentsAsString(ACTIVEBRANCH);
+        String activeBranchName = readRef(ACTIVEBRANCH);
         if (activeBranchName.equals(branchName)) {
             System.out.println("Cannot remove the current branch.");
             return;
@@ -584,102 +947,108 @@ public class Repo {
      * @param commitID This is commit id.
      */
     public void reset(String commitID) throws IOException {
-        String activeBranchName = Utils.readContentsAsString(ACTIVEBRANCH);
+        String activeBranchName = readRef(ACTIVEBRANCH);
         File active = Utils.join(BRANCHES, activeBranchName + ".txt");
-        String headName = Utils.readContentsAsString(active);
-        File headFile = Utils.join(COMMITS, headName + ".txt");
-        Commit head = Utils.readObject(headFile, Commit.class);
-        List<String> commitFiles = Utils.plainFilenamesIn(COMMITS);
-        for (String s : commitFiles) {
-            if (s.contains(commitID)) {
-                commitID = s;
-            }
-        }
-        commitID = commitID.substring(0, commitID.length() - 4);
-        File commit = Utils.join(COMMITS, commitID + ".txt");
-        if (!commit.exists()) {
-            System.out.print("No commit with that id exists.");
+        String headName = readRef(active);
+        Commit head = getCommit(headName);
+        commitID = resolveCommit(commitID);
+        if (commitID == null) {
+            return;
+        }
+        Commit com = getCommit(commitID);
+        StagingArea staging = readStaging();
+        if (!materialize(head, com)) {
             return;
         }
-        Commit com = Utils.readObject(commit, Commit.class);
-        StagingArea staging = Utils.readObject(STAGINGFILE, StagingArea.class);
+        Utils.writeContents(active, commitID);
+        staging.clear();
+        writeStaging(staging);
+    }
 
-        for (File file : CWD.listFiles()) {
-            if (!head.getHashMap().containsKey(file.getName())
-                    && com.getHashMap().containsKey(file.getName())) {
+    /**
+     * Folds every loose commit and blob into the packs, so that a large
+     * history is stored in a handful of files instead of one per object.
+     * Reads look in the packs whenever a loose object is missing.
+     */
+    public void repack() throws IOException {
+        int commits = COMMIT_PACK.repack(COMMITS);
+        int trees = TREE_PACK.repack(TREEDIR);
+        int blobs = BLOB_PACK.repack(BLOBS);
+        System.out.println("Packed " + commits + " commits, " + trees
+                + " trees and " + blobs + " blobs.");
+    }
 
-                System.out.print("There is an untracked file in the way; "
-                        + "delete it, or add and commit it first.");
-            }
-        }
-        for (String fileName : com.getHashMap().keySet()) {
-            File blobFile = Utils.join(BLOBS,
-                    com.getHashMap().get(fileName) + ".txt");
-            File cwdFile = Utils.join(CWD, fileName);
+    /**
+     * Rewrites the blobs of a repository made by an older Gitlet, which
+     * are named by both contents and file name and stored raw, as
+     * deflated blobs named by their contents alone. Identical contents
+     * stored under several names collapse into one blob.
+     */
+    public void migrateBlobs() throws IOException {
+        int n = blobStore.migrate();
+        System.out.println("Migrated " + n + " blobs.");
+    }
 
-            if (!cwdFile.exists()) {
-                cwdFile.createNewFile();
-            }
-            String blobString = Utils.readContentsAsString(blobFile);
-            Utils.writeContents(cwdFile, blobString);
-        }
-        for (File file : CWD.listFiles()) {
-            if (head.getHashMap().containsKey(file.getName())
-                    && !com.getHashMap().containsKey(file.getName())) {
-                Utils.restrictedDelete(file);
-            }
+    /**
+     * Prints a repository setting, or changes it when a value is given.
+     * Setting delta.depth to a positive number stores new versions of
+     * tracked files as deltas against the versions they replace, with
+     * chains at most that long.
+     * @param key This is the setting.
+     * @param value This is the new value, or null.
+     */
+    public void config(String key, String value) {
+        if (value == null) {
+            System.out.println(CONFIG.get(key, ""));
+        } else {
+            CONFIG.set(key, value);
         }
-        Utils.writeContents(active, commitID);
-        staging.clear();
-        Utils.writeObject(STAGINGFILE, staging);
     }
 
     /**
      * branch1 = headName.
      * branch2 = branchName The one were merging.
      * @param branchName This is branch name.
+     * @param headName This is the head's id.
+     * @param commitName This is the given branch's id.
+     * @return true if there is nothing left to merge.
      */
-    public void mergeT(String branchName) throws IOException {
-        String activeBranchName = Utils.readContentsAsString(ACTIVEBRANCH);
-        File active = Utils.join(BRANCHES, activeBranchName + ".txt");
-        String headName = Utils.readContentsAsString(active);
-        File headFile = Utils.join(COMMITS, headName + ".txt");
-        Commit head = Utils.readObject(headFile, Commit.class);
-        File branch = Utils.join(BRANCHES, branchName + ".txt");
-        String commitName = Utils.readContentsAsString(branch);
-        String splitPlaceSHA1 = splitSection(branchName);
-        Commit splitPlace = getCommit(splitPlaceSHA1);
-        if (splitPlaceSHA1.equals(commitName)) {
+    public boolean mergeT(String branchName, String headName,
+                          String commitName) throws IOException {
+        int headIndex = graphIndex(headName);
+        int commitIndex = graphIndex(commitName);
+        if (commitGraph().isAncestor(commitIndex, headIndex)) {
             System.out.println("Given branch is an "
                     + "ancestor of the current branch.");
-            return;
+            return true;
         }
-        if (splitPlace.getTimestamp().equals(head.getTimestamp())) {
+        if (commitGraph().isAncestor(headIndex, commitIndex)) {
             System.out.println("Current branch fast-forwarded.");
             checkout3(branchName);
-            return;
+            return true;
         }
+        return false;
     }
     /**
      * branch1 = headName.
      * branch2 = branchName (the one were merging.
+     * The whole merge is planned against one staging area in memory,
+     * which is written once, with the branch, by commitMerge.
      * @param branchName This is branch name.
      */
     public void merge(String branchName) throws IOException {
-        String activeBranchName = Utils.readContentsAsString(ACTIVEBRANCH);
+        String activeBranchName = readRef(ACTIVEBRANCH);
         File active = Utils.join(BRANCHES, activeBranchName + ".txt");
-        String headName = Utils.readContentsAsString(active);
-        File headFile = Utils.join(COMMITS, headName + ".txt");
-        Commit head = Utils.readObject(headFile, Commit.class);
+        String headName = readRef(active);
+        Commit head = getCommit(headName);
         File branch = Utils.join(BRANCHES, branchName + ".txt");
         if (!branch.exists()) {
             System.out.println("A branch with that name does not exists.");
             return;
         }
-        String commitName = Utils.readContentsAsString(branch);
-        File commit = Utils.join(COMMITS, commitName + ".txt");
-        Commit com = Utils.readObject(commit, Commit.class);
-        StagingArea st = Utils.readObject(STAGINGFILE, StagingArea.class);
+        String commitName = readRef(branch);
+        Commit com = getCommit(commitName);
+        StagingArea st = readStaging();
         if (activeBranchName.equals(branchName)) {
             System.out.println("Cannot merge a branch with itself.");
             return;
@@ -690,37 +1059,41 @@ public class Repo {
             System.out.println("You have uncommitted changes.");
             return;
         }
-        List<String> cwdFiles = Utils.plainFilenamesIn(CWD);
-        for (String file : cwdFiles) {
-            if (!head.getHashMap().containsKey(file)) {
+        for (String file : new WorkTree(CWD).list()) {
+            if (head.get(file) == null) {
                 System.out.println("There is an untracked file in "
                         + "the way; delete it, or add and commit it first.");
                 return;
             }
         }
-        mergeT(branchName);
-        HashSet<String> bSet = new HashSet<>(splitPlace.getHashMap().keySet());
-        bSet.addAll(com.getHashMap().keySet());
-        bSet.addAll(head.getHashMap().keySet());
+        if (mergeT(branchName, headName, commitName)) {
+            return;
+        }
+        Map<String, String> hB = head.getHashMap();
+        Map<String, String> cB = com.getHashMap();
+        ArrayList<String> bSet = new ArrayList<>();
+        diff(head, com, (name, before, after) -> bSet.add(name));
         boolean mergeBool = false;
         for (String s : bSet) {
-            boolean cH = com.getHashMap().containsKey(s);
-            boolean sH = splitPlace.getHashMap().containsKey(s);
-            if (head.getHashMap().containsKey(s) && cH && sH) {
-                m1(s, head, com, splitPlace, commitName);
-                mergeBool = merge2(s, head, com, splitPlace) || mergeBool;
-            } else if (!head.getHashMap().containsKey(s) && cH && !sH) {
-                merge3(s, com);
-            } else if (head.getHashMap().containsKey(s) && !cH && sH) {
-                mergeBool = merge2(s, head, com, splitPlace) || mergeBool;
-                merge4(s, head, splitPlace);
-            } else if (!head.getHashMap().containsKey(s) && cH && sH) {
-                mergeBool = merge2(s, head, com, splitPlace) || mergeBool;
-            } else if (head.getHashMap().containsKey(s) && cH && !sH) {
-                mergeBool = merge2(s, head, com, splitPlace) || mergeBool;
-            }
-        }
-        commitMerge(branchName, headName, commitName);
+            boolean hH = hB.containsKey(s);
+            boolean cH = cB.containsKey(s);
+            boolean sH = splitPlace.get(s) != null;
+            if (hH && cH && sH) {
+                m1(s, head, com, splitPlace, st);
+                mergeBool = merge2(s, head, com, splitPlace, st) || mergeBool;
+            } else if (!hH && cH && !sH) {
+                merge3(s, com, st);
+            } else if (hH && !cH && sH) {
+                mergeBool = merge2(s, head, com, splitPlace, st) || mergeBool;
+                merge4(s, head, splitPlace, st);
+            } else if (!hH && cH && sH) {
+                mergeBool = merge2(s, head, com, splitPlace, st) || mergeBool;
+            } else if (hH && cH && !sH) {
+                mergeBool = merge2(s, head, com, splitPlace, st) || mergeBool;
+            }
+        }
+        commitMerge(branchName, activeBranchName, head, headName,
+                commitName, st);
         if (mergeBool) {
             System.out.println("Encountered a merge conflict.");
         }
@@ -728,37 +1101,43 @@ public class Repo {
 
     /** HASHset.
      * @param otherBranchName This is currsha.
+     * @param activeBranchName This is the current branch.
+     * @param head This is head.
      * @param headName1 This is headName.
      * @param commitName This is commit name.
+     * @param staging This is the merge's staging area.
      */
     private static void commitMerge(String otherBranchName,
-                                    String headName1, String commitName) {
-        StagingArea staging = Utils.readObject(STAGINGFILE, StagingArea.class);
-        String activeBranchName = Utils.readContentsAsString(ACTIVEBRANCH);
+                                    String activeBranchName, Commit head,
+                                    String headName1, String commitName,
+                                    StagingArea staging) {
         File active = Utils.join(BRANCHES, activeBranchName + ".txt");
         Commit commit2 = new Commit("Merged "
                 + otherBranchName + " into " + activeBranchName
                 + ".", null, null);
-        String headName = Utils.readContentsAsString(active);
-        File headFile = Utils.join(COMMITS, headName + ".txt");
-        Commit head = Utils.readObject(headFile, Commit.class);
-        commit2.getHashMap().putAll(head.getHashMap());
-        commit2.getHashMap().putAll(staging.getAddFiles());
-        for (Map.Entry<String,
-                String> s : staging.getRemoveFiles().entrySet()) {
-            commit2.getHashMap().remove(s);
-        }
+        commit2.setTree(TREES.update(treeOf(head), changes(staging)));
         commit2.setParent(headName1);
         commit2.setParent2(commitName);
         commit2.setBranch(headName1);
         commit2.setBranch2(commitName);
-        byte[] serializedCommit2 = Utils.serialize(commit2);
-        String newComSha = Utils.sha1((Object) serializedCommit2);
+        byte[] encodedCommit2 = commit2.encode();
+        String newComSha = Utils.sha1((Object) encodedCommit2);
         File comFile = Utils.join(COMMITS, newComSha + ".txt");
-        Utils.writeObject(comFile, commit2);
+        Utils.writeContents(comFile, encodedCommit2);
+        Stats.Timer t = Stats.time(Stats.Phase.INDEXES);
+        try {
+            graphIndex(headName1);
+            graphIndex(commitName);
+            commitGraph().append(newComSha, headName1, commitName);
+            commitIndex().add(newComSha);
+            messageIndex().add(newComSha, commit2.getMessage());
+            journalCommit(newComSha, commit2);
+        } finally {
+            t.end();
+        }
         Utils.writeContents(active, newComSha);
         staging.clear();
-        Utils.writeObject(STAGINGFILE, staging);
+        writeStaging(staging);
     }
 
 
@@ -766,23 +1145,17 @@ public class Repo {
      * @param s This is s.
      * @param m This is split.
      * @param c This is com.
-     * @param p This is splitstring.
      * @param h This is head.
+     * @param staging This is the merge's staging area.
      */
     public void m1(String s, Commit h, Commit c,
-                   Commit m, String p) throws IOException {
-        HashMap<String, String> headB = h.getHashMap();
-        HashMap<String, String> comB = c.getHashMap();
-        HashMap<String, String> splitB = m.getHashMap();
-        StagingArea staging = Utils.readObject(STAGINGFILE, StagingArea.class);
-        if (!comB.get(s).equals(splitB.get(s))) {
-            if (headB.get(s).equals(splitB.get(s))) {
-                {
-                    checkout2(p, s);
-                    staging.add(s);
-                    staging.remove(s, comB.get(s));
-                }
-                Utils.writeObject(STAGINGFILE, staging);
+                   Commit m, StagingArea staging) {
+        String comS = c.get(s);
+        String splitS = m.get(s);
+        if (!comS.equals(splitS)) {
+            if (h.get(s).equals(splitS)) {
+                writeBlob(comS, Utils.join(CWD, s));
+                staging.add(s, comS);
             }
         }
     }
@@ -792,33 +1165,30 @@ public class Repo {
      * @param com This is com.
      * @param split This is split.
      * @param head This is head.
+     * @param staging This is the merge's staging area.
      * @return true or false.*/
-    public boolean merge2(String s, Commit head, Commit com, Commit split) {
-        HashMap<String, String> hB = head.getHashMap();
-        HashMap<String, String> comB = com.getHashMap();
-        HashMap<String, String> splitB = split.getHashMap();
-        StagingArea staging = Utils.readObject(STAGINGFILE, StagingArea.class);
+    public boolean merge2(String s, Commit head, Commit com, Commit split,
+                          StagingArea staging) {
+        String hS = head.get(s);
+        String comS = com.get(s);
+        String splitS = split.get(s);
         boolean bool = false;
-        boolean hCon = hB.containsKey(s);
-        boolean cContain = comB.containsKey(s);
+        boolean hCon = hS != null;
+        boolean cContain = comS != null;
         String writing = "";
-        if (!hB.containsKey(s) && !comB.get(s).equals(splitB.get(s))) {
-            File comFile = Utils.join(BLOBS, comB.get(s) + ".txt");
-            String comString = Utils.readContentsAsString(comFile);
+        if (!hCon && !comS.equals(splitS)) {
+            String comString = readBlobAsString(comS);
             writing = "<<<<<<< HEAD\n" + "=======\n" + comString + ">>>>>>>\n";
             bool = true;
-        } else if (!comB.containsKey(s) && !hB.get(s).equals(splitB.get(s))) {
-            File headFile = Utils.join(BLOBS, hB.get(s) + ".txt");
-            String headString = Utils.readContentsAsString(headFile);
+        } else if (!cContain && !hS.equals(splitS)) {
+            String headString = readBlobAsString(hS);
             writing = "<<<<<<< HEAD\n" + headString + "=======\n" + ">>>>>>>\n";
             bool = true;
-        } else if (hCon && cContain && !hB.get(s).equals(splitB.get(s))) {
-            if (!hB.get(s).equals(splitB.get(s))) {
-                if (!comB.get(s).equals(splitB.get(s))) {
-                    File headFile = Utils.join(BLOBS, hB.get(s) + ".txt");
-                    String headStr = Utils.readContentsAsString(headFile);
-                    File comFile = Utils.join(BLOBS, comB.get(s) + ".txt");
-                    String comString = Utils.readContentsAsString(comFile);
+        } else if (hCon && cContain && !hS.equals(splitS)) {
+            if (!hS.equals(splitS)) {
+                if (!comS.equals(splitS)) {
+                    String headStr = readBlobAsString(hS);
+                    String comString = readBlobAsString(comS);
                     String he = "<<<<<<< HEAD\n";
                     String sp = "=======\n";
                     String end = ">>>>>>>\n";
@@ -828,127 +1198,373 @@ public class Repo {
             }
         }
         if (bool) {
-            String blobName = Utils.sha1(writing) + Utils.sha1(s);
-            File blobFile = Utils.join(BLOBS, blobName + ".txt");
-            Utils.writeObject(blobFile, writing);
+            String blobName;
+            try {
+                blobName = blobStore.write(
+                        writing.getBytes(StandardCharsets.UTF_8));
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
             File fileFile = Utils.join(CWD, s);
             Utils.writeContents(fileFile, writing);
-            staging.add(s);
+            staging.add(s, blobName);
         }
-        Utils.writeObject(STAGINGFILE, staging);
         return bool;
     }
 
     /** HASHset.
      * @param s This is s.
-     * @param com Returns hist.*/
-    private static void merge3(String s, Commit com) {
-        HashMap<String, String> comB = com.getHashMap();
-        StagingArea staging = Utils.readObject(STAGINGFILE, StagingArea.class);
+     * @param com Returns hist.
+     * @param staging This is the merge's staging area.*/
+    private static void merge3(String s, Commit com, StagingArea staging) {
+        String comS = com.get(s);
         File f = Utils.join(CWD, s);
-        File blobF = Utils.join(BLOBS, comB.get(s) + ".txt");
-        String cont = Utils.readContentsAsString(blobF);
-        Utils.writeContents(f, cont);
-        staging.add(s, com.getHashMap().get(s));
-        Utils.writeObject(STAGINGFILE, staging);
+        writeBlob(comS, f);
+        staging.add(s, comS);
     }
     /** HASHset.
      * @param s This is string.
      * @param head This is head
-     * @param split This is split.*/
-    private static void merge4(String s, Commit head, Commit split) {
-        HashMap<String, String> headB = head.getHashMap();
-        HashMap<String, String> splitB = split.getHashMap();
-        StagingArea staging = Utils.readObject(STAGINGFILE, StagingArea.class);
-        if (headB.get(s).equals(splitB.get(s))) {
+     * @param split This is split.
+     * @param staging This is the merge's staging area.*/
+    private static void merge4(String s, Commit head, Commit split,
+                               StagingArea staging) {
+        String headS = head.get(s);
+        if (headS.equals(split.get(s))) {
             File f = Utils.join(CWD, s);
             f.delete();
-            staging.getRemoveFiles().put(s, headB.get(s));
+            staging.getRemoveFiles().put(s, headS);
+        }
+    }
+
+    /** The staging area, read from disk only if the file changed.
+     * @return Returns a copy the caller may change.*/
+    private static StagingArea readStaging() {
+        if (pendingStaging != null) {
+            return new StagingArea(pendingStaging);
+        }
+        return new StagingArea(STAGING.get());
+    }
+
+    /** Writes the staging area, or keeps it in memory until
+     * flushStaging while writes are deferred.
+     * @param staging This is the new staging area.*/
+    private static void writeStaging(StagingArea staging) {
+        if (deferStaging) {
+            pendingStaging = new StagingArea(staging);
+            return;
         }
         Utils.writeObject(STAGINGFILE, staging);
+        STAGING.put(new StagingArea(staging));
+    }
+
+    /** Starts or stops keeping staging area changes in memory. Stopping
+     * writes any pending changes.
+     * @param defer This is whether to defer writes.*/
+    static void deferStaging(boolean defer) {
+        flushStaging();
+        deferStaging = defer;
+    }
+
+    /** Writes the staging area if it has changes not yet written.*/
+    static void flushStaging() {
+        if (pendingStaging != null) {
+            StagingArea staging = pendingStaging;
+            pendingStaging = null;
+            Utils.writeObject(STAGINGFILE, staging);
+            STAGING.put(new StagingArea(staging));
+        }
+    }
+
+    /** The contents of a branch file or of the active branch file,
+     * read from disk only if the file changed.
+     * @param ref This is the file.
+     * @return Returns its contents.*/
+    private static String readRef(File ref) {
+        return REFS.computeIfAbsent(ref,
+                f -> new FileCache<>(f, Utils::readContentsAsString)).get();
+    }
+
+    /** Drops what this process remembers of files that other processes
+     * may have rewritten since the last command. Decoded commits and
+     * blobs are named by their contents and stay valid; the stores that
+     * keep them are made again only if their settings changed.*/
+    static void refresh() {
+        if (graph != null) {
+            graph.refresh();
+        }
+        idIndex = null;
+        messageIndex = null;
+        COMMIT_PACK.refresh();
+        TREE_PACK.refresh();
+        BLOB_PACK.refresh();
+        CONFIG.refresh();
+        configure();
+    }
+
+    /** Makes the blob store and the commit cache from the settings,
+     * keeping each one whose settings have not changed since it was
+     * made.*/
+    private static void configure() {
+        List<Integer> blobs = List.of(CONFIG.getInt("delta.depth", 0),
+                CONFIG.getInt("blob.rawsize", BlobStore.RAW_SIZE));
+        if (!blobs.equals(blobSettings)) {
+            blobStore = new BlobStore(BLOBS, BLOB_PACK, blobs.get(0),
+                    blobs.get(1));
+            blobSettings = blobs;
+        }
+        int commits = CONFIG.getInt("cache.commits", 1 << 24);
+        if (commitCache == null || commits != commitSettings) {
+            commitCache = new CommitCache(commits);
+            commitSettings = commits;
+        }
     }
 
     /** Commit.
      * @param code This is code.
      * @return Returns hist.*/
     private static Commit getCommit(String code) {
+        return commitCache.get(code, Repo::readCommit);
+    }
+
+    /** The encoded commit named CODE, loose or packed.
+     * @param code This is code.
+     * @return Returns the encoding.*/
+    private static byte[] readCommit(String code) {
         File comFile = Utils.join(COMMITS, code + ".txt");
-        Commit com = Utils.readObject(comFile, Commit.class);
-        return com;
+        if (comFile.exists()) {
+            return Utils.readContents(comFile);
+        }
+        byte[] packed = COMMIT_PACK.read(code);
+        if (packed == null) {
+            throw Utils.error("No commit with that id exists.");
+        }
+        return packed;
+    }
+
+    /** Prints the commit cache's counters when cache.report is true,
+     * and appends the summary of COMMAND to the file named by stats.file,
+     * if set, for collectors of metrics.
+     * @param command This is the command just run.*/
+    public void report(Stats.Command command) {
+        if (!GITLET.exists()) {
+            return;
+        }
+        if (CONFIG.get("cache.report", "false").equals("true")) {
+            System.err.println(commitCache);
+        }
+        String statsFile = CONFIG.get("stats.file", "");
+        if (!statsFile.isEmpty()) {
+            try {
+                Files.writeString(CWD.toPath().resolve(statsFile),
+                        command.summary() + "\n", StandardCharsets.UTF_8,
+                        StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+            } catch (IOException excp) {
+                System.err.println("Could not write " + statsFile + ": "
+                        + excp.getMessage());
+            }
+        }
+    }
+
+    /** The full id of a commit, which may be abbreviated. Prints why
+     * when there is no such commit or the prefix is ambiguous.
+     * @param code This is code.
+     * @return Returns the full id, or null.*/
+    private static String resolveCommit(String code) {
+        List<String> found = commitIndex().lookup(code, 2);
+        if (found.isEmpty()) {
+            System.out.print("No commit with that id exists.");
+            return null;
+        }
+        if (found.size() > 1) {
+            System.out.print("Ambiguous commit id.");
+            return null;
+        }
+        return found.get(0);
+    }
+
+    /** Adds commit C, named ID, to the journal. A missing journal is
+     * rebuilt instead, which includes C.
+     * @param id This is the commit id.
+     * @param c This is the commit.*/
+    private static void journalCommit(String id, Commit c) {
+        Journal journal = new Journal(JOURNALFILE);
+        if (journal.exists()) {
+            journal.append(id, c.getTimestamp().getTime(), c.getMessage());
+        } else {
+            journal();
+        }
+    }
+
+    /** The commit journal, rebuilt from every commit if it is missing.
+     * @return Returns the journal.*/
+    private static Journal journal() {
+        Journal journal = new Journal(JOURNALFILE);
+        if (!journal.exists()) {
+            GLOBALLOG.mkdirs();
+            Stats.Timer t = Stats.time(Stats.Phase.INDEXES);
+            try {
+                journal.rewrite(commitIds(), Repo::getCommit);
+            } finally {
+                t.end();
+            }
+        }
+        return journal;
+    }
+
+    /** The commit message index, built from every commit if it is
+     * missing.
+     * @return Returns the index.*/
+    private static MessageIndex messageIndex() {
+        if (messageIndex == null) {
+            messageIndex = new MessageIndex(MESSAGES);
+            if (!messageIndex.exists()) {
+                Stats.Timer t = Stats.time(Stats.Phase.INDEXES);
+                try {
+                    messageIndex.rewrite(commitIds(),
+                            s -> getCommit(s).getMessage());
+                } finally {
+                    t.end();
+                }
+            }
+        }
+        return messageIndex;
+    }
+
+    /** The commit id index, built from every commit if it is missing.
+     * @return Returns the index.*/
+    private static IdIndex commitIndex() {
+        if (idIndex == null) {
+            idIndex = new IdIndex(IDINDEX);
+            if (!idIndex.exists()) {
+                Stats.Timer t = Stats.time(Stats.Phase.INDEXES);
+                try {
+                    idIndex.rewrite(commitIds());
+                } finally {
+                    t.end();
+                }
+            }
+        }
+        return idIndex;
+    }
+
+    /** The ids of every commit, loose or packed.
+     * @return Returns the ids.*/
+    private static List<String> commitIds() {
+        ArrayList<String> ids = new ArrayList<>();
+        for (String s : Utils.plainFilenamesIn(COMMITS)) {
+            if (s.endsWith(".txt")) {
+                ids.add(s.substring(0, s.length() - 4));
+            }
+        }
+        ids.addAll(COMMIT_PACK.ids());
+        return ids;
+    }
+
+    /** Blob contents.
+     * @param code This is code.
+     * @return Returns the blob's bytes.*/
+    private static byte[] readBlob(String code) {
+        Stats.Timer t = Stats.time(Stats.Phase.OBJECTS);
+        try {
+            return blobStore.read(code);
+        } finally {
+            t.end();
+        }
+    }
+
+    /** Writes the contents of a blob to a working file.
+     * @param code This is the blob id.
+     * @param f This is the file.*/
+    private static void writeBlob(String code, File f) {
+        Stats.Timer t = Stats.time(Stats.Phase.WORKTREE);
+        try {
+            f.getParentFile().mkdirs();
+            blobStore.copyTo(code, f);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        } finally {
+            t.end();
+        }
+    }
+
+    /** Blob contents as a string.
+     * @param code This is code.
+     * @return Returns the blob's text.*/
+    private static String readBlobAsString(String code) {
+        return new String(readBlob(code), StandardCharsets.UTF_8);
     }
     /** HASHset.
      * @param branchName This is branch name.
      * @return Returns hist.*/
-    private static String splitSection(String branchName) {
-        List<String> commitLists = Utils.plainFilenamesIn(COMMITS);
+    static String splitSection(String branchName) {
         File passingFile = Utils.join(BRANCHES, branchName + ".txt");
-        String passingBranchName = Utils.readContentsAsString(passingFile);
-        String activeBranchName = Utils.readContentsAsString(ACTIVEBRANCH);
+        String passingBranchName = readRef(passingFile);
+        String activeBranchName = readRef(ACTIVEBRANCH);
         File active = Utils.join(BRANCHES, activeBranchName + ".txt");
-        String headName = Utils.readContentsAsString(active);
-        File headFile = Utils.join(COMMITS, headName + ".txt");
-        HashSet<String> currComHistory;
-        HashSet<String> mergeComHistory;
-        ArrayList<String> commAn = new ArrayList<>();
-        currComHistory = commitHis(headName);
-        mergeComHistory = commitHis(passingBranchName);
-        for (String s : currComHistory) {
-            if (mergeComHistory.contains(s)) {
-                commAn.add(s);
-            }
+        String headName = readRef(active);
+        int headIndex = graphIndex(headName);
+        int passingIndex = graphIndex(passingBranchName);
+        int split = commitGraph().mergeBase(headIndex, passingIndex);
+        return split < 0 ? null : commitGraph().idAt(split);
+    }
+
+    /** The commit graph.
+     * @return Returns the graph.*/
+    private static CommitGraph commitGraph() {
+        if (graph == null) {
+            graph = new CommitGraph(GRAPHFILE);
         }
-        HashMap<String, Boolean> markingCom = new HashMap<>();
-        for (String c : commitLists) {
-            markingCom.put(c, false);
+        return graph;
+    }
+
+    /** The graph record of a commit. The graph is rebuilt from the
+     * commits when it does not know the commit, as for repositories made
+     * before it existed.
+     * @param code This is code.
+     * @return Returns the record number.*/
+    private static int graphIndex(String code) {
+        int i = commitGraph().indexOf(code);
+        if (i < 0) {
+            Stats.Timer t = Stats.time(Stats.Phase.INDEXES);
+            try {
+                rebuildGraph();
+            } finally {
+                t.end();
+            }
+            i = commitGraph().indexOf(code);
         }
-        String split = bfs(commAn, headName, markingCom);
-        return split;
+        return i;
     }
-    /** HASHset.
-     * @param currSha1 This is currsha.
-     * @return Returns hist.*/
-    private static HashSet<String> commitHis(String currSha1) {
-        HashSet<String> hist = new HashSet<>();
-
-        if (getCommit(currSha1).getParent() != null) {
-            hist.addAll(commitHis(getCommit(currSha1).getParent()));
-        }
-        hist.add(currSha1);
-        if (getCommit(currSha1).getParent2() != null) {
-            hist.addAll(commitHis(getCommit(currSha1).getParent2()));
-        }
-        return hist;
-    }
-
-    /** StagingARea class.
-     * @param c This is comm.
-     * @param m This is the marking.
-     * @param s This is shaCode.
-     * @return null.*/
-    public static String bfs(ArrayList<String> c,
-                             String s, HashMap<String, Boolean> m) {
-        ArrayDeque<String> deq = new ArrayDeque<>();
-        deq.add(s);
-        m.put(s, true);
-        String commitString = "";
-        while (!deq.isEmpty()) {
-            String remCom = deq.remove();
-            Commit getCom = getCommit(remCom);
-            String comPsha = getCom.getParent();
-            String comP2sha = getCom.getParent2();
-            if (c.contains(remCom)) {
-                commitString = remCom;
-                return commitString;
-            }
-            if (!m.containsKey(comPsha)) {
-                deq.add(comPsha);
-                m.put(comPsha, true);
-            }
-            if (comP2sha != null && !m.containsKey(comP2sha)) {
-                deq.add(comP2sha);
-                m.put(comP2sha, true);
-            }
-        }
-        return null;
+
+    /** Rewrites the commit graph from every commit, parents first.*/
+    private static void rebuildGraph() {
+        HashMap<String, String[]> parents = new HashMap<>();
+        HashSet<String> placed = new HashSet<>();
+        ArrayList<String> order = new ArrayList<>();
+        ArrayDeque<String> stack = new ArrayDeque<>();
+        for (String id : commitIds()) {
+            stack.push(id);
+            while (!stack.isEmpty()) {
+                String top = stack.peek();
+                if (!parents.containsKey(top)) {
+                    Commit c = getCommit(top);
+                    parents.put(top,
+                            new String[] {c.getParent(), c.getParent2()});
+                    for (String p : parents.get(top)) {
+                        if (p != null && !parents.containsKey(p)) {
+                            stack.push(p);
+                        }
+                    }
+                } else {
+                    stack.pop();
+                    if (placed.add(top)) {
+                        order.add(top);
+                    }
+                }
+            }
+        }
+        CommitGraph.write(GRAPHFILE, order, parents);
+        graph = null;
     }
 }
@@ -8,6 +8,8 @@ import java.util.LinkedHashMap;
  * @author Erin Bhan
  */
 public class StagingArea implements Serializable {
+    /** Matches the files written before this class changed.*/
+    private static final long serialVersionUID = 1445165776147225431L;
     /** Add File.*/
     private LinkedHashMap<String, String> addFile;
     /** Remove File.*/
@@ -19,6 +21,14 @@ public class StagingArea implements Serializable {
         removeFile = new LinkedHashMap<>();
     }
 
+    /** A copy of another staging area.
+     * @param other The staging area to copy.
+     */
+    StagingArea(StagingArea other) {
+        addFile = new LinkedHashMap<>(other.addFile);
+        removeFile = new LinkedHashMap<>(other.removeFile);
+    }
+
     /** StagingARea class.
      * @param fileName This is file name.
      * @param shaCode This is shaCode.
@@ -0,0 +1,198 @@
+package gitlet;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * StatIndex class for Gitlet, the tiny stupid version-control system.
+ * Remembers the size, modification time, inode and content id of each
+ * working file the last time it was hashed, so that a file whose stat
+ * data has not changed need not be read again. An entry whose file was
+ * modified no earlier than the index itself was written is "racily
+ * clean": the file may have changed again within the same clock tick,
+ * so it is hashed anyway.
+ *
+ * @author Erin Bhan
+ */
+class StatIndex {
+
+    /** Magic number at the start of the file.*/
+    private static final int MAGIC = 0x47535458;
+
+    /** Stat data and content id of one file.*/
+    private static class Entry {
+        /** File size.*/
+        private long size;
+        /** Modification time in nanoseconds.*/
+        private long mtime;
+        /** Inode number, or 0 if the file system has none.*/
+        private long inode;
+        /** Content id.*/
+        private String id;
+    }
+
+    /** The index file.*/
+    private final File file;
+    /** Entries by file name.*/
+    private final HashMap<String, Entry> entries = new HashMap<>();
+    /** Modification time of the index file when it was read.*/
+    private long written;
+    /** Whether entries changed since the file was read.*/
+    private boolean dirty;
+
+    /** The index stored in FILE.
+     * @param file1 The index file.
+     */
+    StatIndex(File file1) {
+        file = file1;
+        if (!file.isFile()) {
+            return;
+        }
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != MAGIC) {
+                return;
+            }
+            for (int n = in.readInt(); n > 0; n -= 1) {
+                String name = in.readUTF();
+                Entry e = new Entry();
+                e.size = in.readLong();
+                e.mtime = in.readLong();
+                e.inode = in.readLong();
+                e.id = in.readUTF();
+                entries.put(name, e);
+            }
+            written = Files.getLastModifiedTime(file.toPath())
+                    .to(TimeUnit.NANOSECONDS);
+        } catch (IOException excp) {
+            entries.clear();
+        }
+    }
+
+    /** The recorded content id of a working file, if its stat data still
+     * matches the index and the entry is not racily clean.
+     * @param name The file's name.
+     * @param f The file.
+     * @return Returns the content id, or null if F must be hashed.
+     */
+    String lookup(String name, File f) {
+        Entry now = stat(f);
+        Entry old = entries.get(name);
+        if (old != null && now != null && old.size == now.size
+                && old.mtime == now.mtime && old.inode == now.inode
+                && old.mtime < written) {
+            return old.id;
+        }
+        return null;
+    }
+
+    /** The content id of a working file, hashing it only when its stat
+     * data does not match the index.
+     * @param name The file's name.
+     * @param f The file.
+     * @return Returns the content id of F.
+     */
+    String contentId(String name, File f) {
+        String id = lookup(name, f);
+        if (id != null) {
+            return id;
+        }
+        try (InputStream in = new FileInputStream(f)) {
+            id = Utils.sha1(in, null);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        update(name, f, id);
+        return id;
+    }
+
+    /** Records that file F, named NAME, has content id ID.
+     * @param name The file's name.
+     * @param f The file.
+     * @param id The content id.
+     */
+    void update(String name, File f, String id) {
+        Entry e = stat(f);
+        if (e != null) {
+            e.id = id;
+            entries.put(name, e);
+            dirty = true;
+        }
+    }
+
+    /** Forgets a file.
+     * @param name The file's name.
+     */
+    void remove(String name) {
+        dirty |= entries.remove(name) != null;
+    }
+
+    /** Writes the index if it changed.*/
+    void save() {
+        if (!dirty) {
+            return;
+        }
+        File tmp = new File(file.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(tmp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(entries.size());
+            for (Map.Entry<String, Entry> me : entries.entrySet()) {
+                Entry e = me.getValue();
+                out.writeUTF(me.getKey());
+                out.writeLong(e.size);
+                out.writeLong(e.mtime);
+                out.writeLong(e.inode);
+                out.writeUTF(e.id);
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        try {
+            Files.move(tmp.toPath(), file.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        dirty = false;
+    }
+
+    /** The current stat data of F.
+     * @param f The file.
+     * @return Returns an entry without an id, or null if F is missing.
+     */
+    private static Entry stat(File f) {
+        Path p = f.toPath();
+        try {
+            BasicFileAttributes attrs =
+                    Files.readAttributes(p, BasicFileAttributes.class);
+            Entry e = new Entry();
+            e.size = attrs.size();
+            e.mtime = attrs.lastModifiedTime().to(TimeUnit.NANOSECONDS);
+            try {
+                e.inode = ((Number) Files.getAttribute(p, "unix:ino"))
+                        .longValue();
+            } catch (UnsupportedOperationException
+                     | IllegalArgumentException excp) {
+                e.inode = 0;
+            }
+            return e;
+        } catch (IOException excp) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,314 @@
+package gitlet;
+
+import java.util.concurrent.atomic.LongAdder;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Stats class for Gitlet, the tiny stupid version-control system.
+ * Counts the work a command does and times its phases, so slowness can
+ * be put down to loading objects, hashing or the working tree. Counters
+ * only grow; a Command remembers them when it starts and reports the
+ * difference when it ends, so commands run by a batch are counted both
+ * on their own and as part of the batch. Phases are timed on the thread
+ * that runs the command and may nest, so their times can add up to more
+ * than the command's.
+ *
+ * Every command and phase is also a JFR event, gitlet.Command and
+ * gitlet.Phase, which cost nothing unless a recording is running.
+ *
+ * @author Erin Bhan
+ */
+class Stats {
+
+    /** Things counted.*/
+    enum Counter {
+        /** Objects deserialized.*/
+        OBJECT_READS("objectReads"),
+        /** Objects serialized.*/
+        OBJECT_WRITES("objectWrites"),
+        /** Bytes read from files, loose or packed.*/
+        BYTES_READ("bytesRead"),
+        /** Bytes written to files.*/
+        BYTES_WRITTEN("bytesWritten"),
+        /** Directory entries listed.*/
+        FILES_LISTED("filesListed"),
+        /** Bytes hashed with SHA-1.*/
+        SHA1_BYTES("sha1Bytes"),
+        /** Blobs opened for reading.*/
+        BLOB_READS("blobReads"),
+        /** Commits found in the commit cache.*/
+        COMMIT_CACHE_HITS("commitCacheHits"),
+        /** Commits read and decoded.*/
+        COMMIT_CACHE_MISSES("commitCacheMisses");
+
+        /** Name in summaries.*/
+        private final String key;
+
+        /** A counter called KEY1 in summaries.
+         * @param key1 The name.
+         */
+        Counter(String key1) {
+            key = key1;
+        }
+    }
+
+    /** Phases of commands.*/
+    enum Phase {
+        /** Loading commits and trees.*/
+        OBJECTS("objects"),
+        /** Reading, hashing and writing working files.*/
+        WORKTREE("worktree"),
+        /** Updating or rebuilding the commit graph, id index, message
+         * index and journal.*/
+        INDEXES("indexes");
+
+        /** Name in summaries.*/
+        private final String key;
+
+        /** A phase called KEY1 in summaries.
+         * @param key1 The name.
+         */
+        Phase(String key1) {
+            key = key1;
+        }
+    }
+
+    /** The counters, indexed by ordinal.*/
+    private static final LongAdder[] COUNTS =
+            new LongAdder[Counter.values().length];
+    /** Nanoseconds spent in each phase, indexed by ordinal.*/
+    private static final LongAdder[] NANOS =
+            new LongAdder[Phase.values().length];
+    /** The phase each thread is in, to skip timing nested entries of
+     * the same phase.*/
+    private static final ThreadLocal<Phase> CURRENT = new ThreadLocal<>();
+
+    static {
+        for (int i = 0; i < COUNTS.length; i += 1) {
+            COUNTS[i] = new LongAdder();
+        }
+        for (int i = 0; i < NANOS.length; i += 1) {
+            NANOS[i] = new LongAdder();
+        }
+    }
+
+    /** JFR event of one command.*/
+    @Name("gitlet.Command")
+    @Label("Gitlet Command")
+    @Category("Gitlet")
+    @Description("A command run by Main, with what it counted")
+    static class CommandEvent extends Event {
+        /** The command's name.*/
+        @Label("Command")
+        String command;
+        /** Objects deserialized.*/
+        @Label("Object Reads")
+        long objectReads;
+        /** Objects serialized.*/
+        @Label("Object Writes")
+        long objectWrites;
+        /** Bytes read.*/
+        @Label("Bytes Read")
+        long bytesRead;
+        /** Bytes written.*/
+        @Label("Bytes Written")
+        long bytesWritten;
+        /** Directory entries listed.*/
+        @Label("Files Listed")
+        long filesListed;
+        /** Bytes hashed.*/
+        @Label("SHA-1 Bytes")
+        long sha1Bytes;
+    }
+
+    /** JFR event of one phase.*/
+    @Name("gitlet.Phase")
+    @Label("Gitlet Phase")
+    @Category("Gitlet")
+    @Description("Time spent in one phase of a command")
+    static class PhaseEvent extends Event {
+        /** The phase's name.*/
+        @Label("Phase")
+        String phase;
+    }
+
+    /** Counts N more of C.
+     * @param c The counter.
+     * @param n The amount.
+     */
+    static void add(Counter c, long n) {
+        COUNTS[c.ordinal()].add(n);
+    }
+
+    /** Enters phase P on this thread, which lasts until the returned
+     * timer is ended. Entering a phase already entered does nothing.
+     * @param p The phase.
+     * @return Returns the timer.
+     */
+    static Timer time(Phase p) {
+        Phase outer = CURRENT.get();
+        if (outer == p) {
+            return Timer.NESTED;
+        }
+        CURRENT.set(p);
+        return new Timer(p, outer);
+    }
+
+    /** Time spent in one phase, from its start until ended. Callers
+     * end it in a finally block.*/
+    static class Timer {
+        /** A timer of a phase already being timed.*/
+        private static final Timer NESTED = new Timer();
+
+        /** The phase, or null for NESTED.*/
+        private final Phase phase;
+        /** The phase this one was entered from, or null.*/
+        private final Phase outer;
+        /** When it started.*/
+        private final long start;
+        /** Its JFR event.*/
+        private final PhaseEvent event;
+
+        /** The timer of a nested entry.*/
+        private Timer() {
+            phase = null;
+            outer = null;
+            start = 0;
+            event = null;
+        }
+
+        /** A timer of P, entered from OUTER1.
+         * @param p The phase.
+         * @param outer1 The enclosing phase, or null.
+         */
+        Timer(Phase p, Phase outer1) {
+            phase = p;
+            outer = outer1;
+            event = new PhaseEvent();
+            event.begin();
+            start = System.nanoTime();
+        }
+
+        /** Leaves the phase, adding the time spent in it.*/
+        void end() {
+            if (phase == null) {
+                return;
+            }
+            NANOS[phase.ordinal()].add(System.nanoTime() - start);
+            CURRENT.set(outer);
+            if (event.shouldCommit()) {
+                event.phase = phase.key;
+                event.commit();
+            }
+        }
+    }
+
+    /** One command being counted.*/
+    static class Command {
+        /** The command's name.*/
+        private final String name;
+        /** The counters when it started.*/
+        private final long[] counts = new long[COUNTS.length];
+        /** The phase times when it started.*/
+        private final long[] nanos = new long[NANOS.length];
+        /** When it started.*/
+        private final long start;
+        /** How long it took, once ended.*/
+        private long wall;
+        /** Its JFR event.*/
+        private final CommandEvent event = new CommandEvent();
+
+        /** Starts counting the command NAME1.
+         * @param name1 The command's name.
+         */
+        Command(String name1) {
+            name = name1;
+            for (int i = 0; i < counts.length; i += 1) {
+                counts[i] = COUNTS[i].sum();
+            }
+            for (int i = 0; i < nanos.length; i += 1) {
+                nanos[i] = NANOS[i].sum();
+            }
+            event.begin();
+            start = System.nanoTime();
+        }
+
+        /** Stops counting, turning the counters into the differences
+         * since the start.*/
+        void end() {
+            wall = System.nanoTime() - start;
+            for (int i = 0; i < counts.length; i += 1) {
+                counts[i] = COUNTS[i].sum() - counts[i];
+            }
+            for (int i = 0; i < nanos.length; i += 1) {
+                nanos[i] = NANOS[i].sum() - nanos[i];
+            }
+            if (event.shouldCommit()) {
+                event.command = name;
+                event.objectReads = count(Counter.OBJECT_READS);
+                event.objectWrites = count(Counter.OBJECT_WRITES);
+                event.bytesRead = count(Counter.BYTES_READ);
+                event.bytesWritten = count(Counter.BYTES_WRITTEN);
+                event.filesListed = count(Counter.FILES_LISTED);
+                event.sha1Bytes = count(Counter.SHA1_BYTES);
+                event.commit();
+            }
+        }
+
+        /** How much of C the command did, once ended.
+         * @param c The counter.
+         * @return Returns the count.
+         */
+        long count(Counter c) {
+            return counts[c.ordinal()];
+        }
+
+        /** The summary of an ended command as one line of JSON, with the
+         * command's name, its wall time and that of each phase it entered
+         * in milliseconds, and each counter.
+         * @return Returns the line.
+         */
+        String summary() {
+            StringBuilder s = new StringBuilder("{\"command\":\"");
+            for (char c : name.toCharArray()) {
+                if (c == '"' || c == '\\') {
+                    s.append('\\').append(c);
+                } else if (c < ' ') {
+                    s.append(String.format("\\u%04x", (int) c));
+                } else {
+                    s.append(c);
+                }
+            }
+            s.append("\",\"wallMs\":").append(millis(wall));
+            s.append(",\"phases\":{");
+            String sep = "";
+            for (Phase p : Phase.values()) {
+                if (nanos[p.ordinal()] > 0) {
+                    s.append(sep).append('"').append(p.key).append("\":")
+                            .append(millis(nanos[p.ordinal()]));
+                    sep = ",";
+                }
+            }
+            s.append('}');
+            for (Counter c : Counter.values()) {
+                s.append(",\"").append(c.key).append("\":")
+                        .append(count(c));
+            }
+            return s.append('}').toString();
+        }
+
+        /** NANOS1 as milliseconds with three decimals.
+         * @param nanos1 A time in nanoseconds.
+         * @return Returns the number, as text.
+         */
+        private static String millis(long nanos1) {
+            return String.format("%d.%03d", nanos1 / 1000000,
+                    nanos1 / 1000 % 1000);
+        }
+    }
+}
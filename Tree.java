@@ -0,0 +1,203 @@
+package gitlet;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Tree class for Gitlet, the tiny stupid version-control system.
+ * One directory of a commit: each entry maps a name to the blob of a
+ * file or to the tree of a subdirectory. Trees are named by the SHA-1
+ * of their encoding, so a directory that is the same in two commits is
+ * one object shared by both, and comparing two trees can skip every
+ * subdirectory whose id is the same on both sides.
+ *
+ * @author Erin Bhan
+ */
+class Tree {
+
+    /** First bytes of an encoded tree.*/
+    private static final byte[] MAGIC = {'G', 'T'};
+    /** Version of the encoding written by encode.*/
+    private static final int VERSION = 1;
+    /** Kind byte of a file entry.*/
+    private static final int BLOB = 'b';
+    /** Kind byte of a subdirectory entry.*/
+    private static final int TREE = 't';
+
+    /** One entry of a tree.*/
+    static final class Entry {
+        /** Whether the entry is a subdirectory.*/
+        private final boolean tree;
+        /** The id of its blob or tree.*/
+        private final String id;
+
+        /** An entry.
+         * @param tree1 Whether it is a subdirectory.
+         * @param id1 The id of its blob or tree.
+         */
+        Entry(boolean tree1, String id1) {
+            tree = tree1;
+            id = id1;
+        }
+
+        /** Whether the entry is a subdirectory.
+         * @return true for a tree, false for a blob.
+         */
+        boolean isTree() {
+            return tree;
+        }
+
+        /** The id of the entry's blob or tree.
+         * @return Returns the id.
+         */
+        String id() {
+            return id;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Entry && ((Entry) o).tree == tree
+                    && ((Entry) o).id.equals(id);
+        }
+
+        @Override
+        public int hashCode() {
+            return id.hashCode() * 2 + (tree ? 1 : 0);
+        }
+    }
+
+    /** The entries, by name.*/
+    private final TreeMap<String, Entry> entries;
+
+    /** An empty tree.*/
+    Tree() {
+        entries = new TreeMap<>();
+    }
+
+    /** A copy of OTHER, which can then be changed on its own.
+     * @param other The tree to copy.
+     */
+    Tree(Tree other) {
+        entries = new TreeMap<>(other.entries);
+    }
+
+    /** The entry called NAME.
+     * @param name The name.
+     * @return Returns the entry, or null.
+     */
+    Entry get(String name) {
+        return entries.get(name);
+    }
+
+    /** Makes NAME a file with blob ID.
+     * @param name The name.
+     * @param id The blob id.
+     */
+    void putBlob(String name, String id) {
+        entries.put(name, new Entry(false, id));
+    }
+
+    /** Makes NAME a subdirectory with tree ID.
+     * @param name The name.
+     * @param id The tree id.
+     */
+    void putTree(String name, String id) {
+        entries.put(name, new Entry(true, id));
+    }
+
+    /** Removes the entry called NAME.
+     * @param name The name.
+     */
+    void remove(String name) {
+        entries.remove(name);
+    }
+
+    /** Whether the tree has no entries.
+     * @return true if it is empty.
+     */
+    boolean isEmpty() {
+        return entries.isEmpty();
+    }
+
+    /** The entries, sorted by name.
+     * @return Returns an unmodifiable view.
+     */
+    Map<String, Entry> entries() {
+        return Collections.unmodifiableMap(entries);
+    }
+
+    /** Encodes this tree canonically: its entries sorted by name. The
+     * tree id is the SHA-1 of these bytes.
+     * @return Returns the encoded tree.
+     */
+    byte[] encode() {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.write(MAGIC);
+            out.writeByte(VERSION);
+            out.writeInt(entries.size());
+            for (Map.Entry<String, Entry> e : entries.entrySet()) {
+                out.writeByte(e.getValue().tree ? TREE : BLOB);
+                writeString(out, e.getKey());
+                writeString(out, e.getValue().id);
+            }
+            out.close();
+            return bytes.toByteArray();
+        } catch (IOException excp) {
+            throw Utils.error("Internal error serializing tree.");
+        }
+    }
+
+    /** Decodes a tree written by encode.
+     * @param bytes The stored tree.
+     * @return Returns the tree.
+     */
+    static Tree decode(byte[] bytes) {
+        try {
+            DataInputStream in =
+                    new DataInputStream(new ByteArrayInputStream(bytes));
+            if (in.readByte() != MAGIC[0] || in.readByte() != MAGIC[1]
+                    || in.readUnsignedByte() != VERSION) {
+                throw Utils.error("Unknown tree format.");
+            }
+            Tree result = new Tree();
+            for (int n = in.readInt(); n > 0; n -= 1) {
+                boolean tree = in.readUnsignedByte() == TREE;
+                String name = readString(in);
+                result.entries.put(name, new Entry(tree, readString(in)));
+            }
+            return result;
+        } catch (IOException excp) {
+            throw Utils.error("Corrupt tree.");
+        }
+    }
+
+    /** Writes a length-prefixed UTF-8 string.
+     * @param out The stream.
+     * @param s The string.
+     */
+    private static void writeString(DataOutputStream out, String s)
+        throws IOException {
+        byte[] b = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(b.length);
+        out.write(b);
+    }
+
+    /** Reads a string written by writeString.
+     * @param in The stream.
+     * @return Returns the string.
+     */
+    private static String readString(DataInputStream in) throws IOException {
+        byte[] b = new byte[in.readInt()];
+        in.readFully(b);
+        return new String(b, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,285 @@
+package gitlet;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * TreeStore class for Gitlet, the tiny stupid version-control system.
+ * Stores trees, loose or packed like commits, and works on whole
+ * snapshots through them: building a snapshot from its changes to
+ * another rewrites only the trees on the changed paths, and comparing
+ * two snapshots descends only into subdirectories that differ. Paths
+ * use / between directories.
+ *
+ * @author Erin Bhan
+ */
+class TreeStore {
+
+    /** Total size of the encodings of the trees kept in the cache.*/
+    private static final long CACHE_LIMIT = 1 << 24;
+
+    /** Called with each path that differs between two snapshots.*/
+    interface Visitor {
+        /** Visits one path.
+         * @param path The path.
+         * @param before Its blob in the first snapshot, or null.
+         * @param after Its blob in the second snapshot, or null.
+         */
+        void visit(String path, String before, String after);
+    }
+
+    /** A cached tree and the size of its encoding.*/
+    private static class Cached {
+        /** The tree.*/
+        private final Tree tree;
+        /** Size of its encoding in bytes.*/
+        private final int size;
+
+        /** An entry.
+         * @param tree1 The tree.
+         * @param size1 Its weight.
+         */
+        Cached(Tree tree1, int size1) {
+            tree = tree1;
+            size = size1;
+        }
+    }
+
+    /** The directory of loose trees.*/
+    private final File dir;
+    /** The pack of trees.*/
+    private final Pack pack;
+    /** Recently used trees, least recently used first.*/
+    private final LinkedHashMap<String, Cached> cache =
+            new LinkedHashMap<>(64, 0.75f, true);
+    /** Total size of the cached trees.*/
+    private long cached;
+
+    /** A tree store.
+     * @param dir1 The directory of loose trees.
+     * @param pack1 The pack of trees.
+     */
+    TreeStore(File dir1, Pack pack1) {
+        dir = dir1;
+        pack = pack1;
+    }
+
+    /** The tree named ID.
+     * @param id The tree id.
+     * @return Returns the tree, which callers must not change.
+     */
+    Tree read(String id) {
+        synchronized (cache) {
+            Cached hit = cache.get(id);
+            if (hit != null) {
+                return hit.tree;
+            }
+        }
+        Stats.Timer timer = Stats.time(Stats.Phase.OBJECTS);
+        try {
+            File f = Utils.join(dir, id + ".txt");
+            byte[] encoded = f.exists() ? Utils.readContents(f)
+                    : pack.read(id);
+            if (encoded == null) {
+                throw Utils.error("Missing tree %s.", id);
+            }
+            Tree t = Tree.decode(encoded);
+            remember(id, t, encoded.length);
+            return t;
+        } finally {
+            timer.end();
+        }
+    }
+
+    /** Stores T unless it is already stored.
+     * @param t The tree.
+     * @return Returns its id.
+     */
+    String write(Tree t) {
+        byte[] encoded = t.encode();
+        String id = Utils.sha1((Object) encoded);
+        File f = Utils.join(dir, id + ".txt");
+        if (!f.exists() && !pack.contains(id)) {
+            dir.mkdirs();
+            Utils.writeContents(f, (Object) encoded);
+        }
+        remember(id, t, encoded.length);
+        return id;
+    }
+
+    /** Stores the snapshot FILES.
+     * @param files The blob id of each path.
+     * @return Returns the id of its root tree.
+     */
+    String write(Map<String, String> files) {
+        return update(null, files);
+    }
+
+    /** Stores the snapshot ROOT with CHANGES made to it. Only the trees
+     * on changed paths are read and written; the others are shared.
+     * @param root The id of the root tree, or null for no files.
+     * @param changes The new blob id of each changed path, or null for
+     * a path that is removed.
+     * @return Returns the id of the new root tree.
+     */
+    String update(String root, Map<String, String> changes) {
+        String id = update1(root, changes);
+        return id != null ? id : write(new Tree());
+    }
+
+    /** As for update, but returns null for a tree left empty.
+     * @param root The id of the tree, or null.
+     * @param changes The changes, relative to the tree's directory.
+     * @return Returns the id of the new tree, or null.
+     */
+    private String update1(String root, Map<String, String> changes) {
+        if (changes.isEmpty() && root != null) {
+            return root;
+        }
+        Tree t = root == null ? new Tree() : new Tree(read(root));
+        HashMap<String, HashMap<String, String>> sub = new HashMap<>();
+        for (Map.Entry<String, String> e : changes.entrySet()) {
+            String path = e.getKey();
+            int slash = path.indexOf('/');
+            if (slash >= 0) {
+                sub.computeIfAbsent(path.substring(0, slash),
+                        k -> new HashMap<>())
+                        .put(path.substring(slash + 1), e.getValue());
+            } else if (e.getValue() != null) {
+                t.putBlob(path, e.getValue());
+            } else if (t.get(path) != null && !t.get(path).isTree()) {
+                t.remove(path);
+            }
+        }
+        for (Map.Entry<String, HashMap<String, String>> e : sub.entrySet()) {
+            Tree.Entry old = t.get(e.getKey());
+            String child = update1(old != null && old.isTree() ? old.id()
+                    : null, e.getValue());
+            if (child != null) {
+                t.putTree(e.getKey(), child);
+            } else if (old != null && old.isTree()) {
+                t.remove(e.getKey());
+            }
+        }
+        return t.isEmpty() ? null : write(t);
+    }
+
+    /** The blob at PATH in the snapshot ROOT, reading only the trees on
+     * the way to it.
+     * @param root The id of the root tree.
+     * @param path The path.
+     * @return Returns the blob id, or null if there is no such file.
+     */
+    String lookup(String root, String path) {
+        Tree t = read(root);
+        int start = 0;
+        for (int slash = path.indexOf('/'); slash >= 0;
+             slash = path.indexOf('/', start)) {
+            Tree.Entry e = t.get(path.substring(start, slash));
+            if (e == null || !e.isTree()) {
+                return null;
+            }
+            t = read(e.id());
+            start = slash + 1;
+        }
+        Tree.Entry e = t.get(path.substring(start));
+        return e == null || e.isTree() ? null : e.id();
+    }
+
+    /** Every file of the snapshot ROOT.
+     * @param root The id of the root tree.
+     * @return Returns the blob id of each path, in tree order.
+     */
+    LinkedHashMap<String, String> flatten(String root) {
+        LinkedHashMap<String, String> result = new LinkedHashMap<>();
+        flatten(root, "", result);
+        return result;
+    }
+
+    /** Adds the files of tree ID, under PREFIX, to RESULT.
+     * @param id The tree id.
+     * @param prefix The tree's path and a /, or "" for the root.
+     * @param result The files so far.
+     */
+    private void flatten(String id, String prefix,
+                         LinkedHashMap<String, String> result) {
+        for (Map.Entry<String, Tree.Entry> e : read(id).entries()
+                .entrySet()) {
+            if (e.getValue().isTree()) {
+                flatten(e.getValue().id(), prefix + e.getKey() + "/",
+                        result);
+            } else {
+                result.put(prefix + e.getKey(), e.getValue().id());
+            }
+        }
+    }
+
+    /** Calls V with each path whose blob differs between the snapshots
+     * A and B, in tree order, skipping subdirectories that are the same
+     * tree in both.
+     * @param a The id of the first root tree, or null for no files.
+     * @param b The id of the second root tree, or null for no files.
+     * @param v The visitor.
+     */
+    void diff(String a, String b, Visitor v) {
+        diff(a, b, "", v);
+    }
+
+    /** Compares the trees A and B, found at PREFIX.
+     * @param a The first tree, or null.
+     * @param b The second tree, or null.
+     * @param prefix The trees' path and a /, or "" for the root.
+     * @param v The visitor.
+     */
+    private void diff(String a, String b, String prefix, Visitor v) {
+        if (a != null && a.equals(b)) {
+            return;
+        }
+        Map<String, Tree.Entry> x = a == null ? Map.of() : read(a).entries();
+        Map<String, Tree.Entry> y = b == null ? Map.of() : read(b).entries();
+        TreeSet<String> names = new TreeSet<>(x.keySet());
+        names.addAll(y.keySet());
+        for (String name : names) {
+            Tree.Entry ex = x.get(name);
+            Tree.Entry ey = y.get(name);
+            if (ex != null && ex.equals(ey)) {
+                continue;
+            }
+            String xb = ex != null && !ex.isTree() ? ex.id() : null;
+            String yb = ey != null && !ey.isTree() ? ey.id() : null;
+            String xt = ex != null && ex.isTree() ? ex.id() : null;
+            String yt = ey != null && ey.isTree() ? ey.id() : null;
+            if (xb != null || yb != null) {
+                v.visit(prefix + name, xb, yb);
+            }
+            if (xt != null || yt != null) {
+                diff(xt, yt, prefix + name + "/", v);
+            }
+        }
+    }
+
+    /** Caches tree T, named ID, whose encoding is SIZE bytes.
+     * @param id The tree id.
+     * @param t The tree.
+     * @param size The size of its encoding.
+     */
+    private void remember(String id, Tree t, int size) {
+        synchronized (cache) {
+            if (size > CACHE_LIMIT || cache.containsKey(id)) {
+                return;
+            }
+            cache.put(id, new Cached(t, size));
+            cached += size;
+            Iterator<Map.Entry<String, Cached>> it =
+                    cache.entrySet().iterator();
+            while (cached > CACHE_LIMIT && it.hasNext()) {
+                cached -= it.next().getValue().size;
+                it.remove();
+            }
+        }
+    }
+}
@@ -4,6 +4,27 @@ import ucb.junit.textui;
 import org.junit.Test;
 import static org.junit.Assert.*;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
 /** The suite of all JUnit tests for the gitlet package.
  *  @author
  */
@@ -20,6 +41,666 @@ public class UnitTest {
     public void placeholderTest() {
     }
 
-}
+    /** The Ith made-up object id. */
+    private static String id(int i) {
+        return Utils.sha1("object " + i);
+    }
+
+    /** A new empty directory. */
+    private static File tempDir() throws IOException {
+        return Files.createTempDirectory("gitlet").toFile();
+    }
+
+    /** N lines, each one of K words chosen by R. */
+    private static String random(Random r, int n, int k) {
+        StringBuilder s = new StringBuilder();
+        for (int i = 0; i < n; i += 1) {
+            s.append("w").append(r.nextInt(k)).append("\n");
+        }
+        return s.toString();
+    }
+
+    /** Writes S to OUT as a commit encoding does. */
+    private static void writeString(DataOutputStream out, String s)
+        throws IOException {
+        byte[] b = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(b.length);
+        out.write(b);
+    }
+
+    /** Commits with a tree round-trip, and commits that list their files
+     *  or were Java-serialized still read. */
+    @Test
+    public void commitCodecTest() throws IOException {
+        Commit c = new Commit("Fix the parser", id(1), id(2));
+        c.setTree(id(3));
+        Commit d = Commit.decode(c.encode());
+        assertEquals("Fix the parser", d.getMessage());
+        assertEquals(id(1), d.getParent());
+        assertEquals(id(2), d.getParent2());
+        assertEquals(id(3), d.getTree());
+        assertEquals(c.getTimestamp(), d.getTimestamp());
+        assertArrayEquals(c.encode(), d.encode());
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.write(new byte[] {'G', 'C', 1});
+        writeString(out, "flat");
+        out.writeLong(5);
+        out.writeByte(1);
+        writeString(out, id(1));
+        out.writeInt(1);
+        writeString(out, "a/b.txt");
+        writeString(out, id(4));
+        out.close();
+        Commit flat = Commit.decode(bytes.toByteArray());
+        assertEquals("flat", flat.getMessage());
+        assertEquals(5, flat.getTimestamp().getTime());
+        assertEquals(id(1), flat.getParent());
+        assertNull(flat.getParent2());
+        assertNull(flat.getTree());
+        assertEquals(Map.of("a/b.txt", id(4)), flat.getHashMap());
+
+        Commit old = Commit.decode(
+                Utils.serialize(new Commit("initial commit", null, null)));
+        assertEquals("initial commit", old.getMessage());
+        assertEquals(0, old.getTimestamp().getTime());
+        assertNull(old.getParent());
+        assertNull(old.getTree());
+        assertTrue(old.getHashMap().isEmpty());
+    }
+
+    /** Objects are found by binary search of the pack index, including
+     *  80-character ids, and the first copy of an id packed twice wins. */
+    @Test
+    public void packTest() throws IOException {
+        File dir = tempDir();
+        Pack pack = new Pack(dir, "objects");
+        assertFalse(pack.contains(id(0)));
+        assertNull(pack.read(id(0)));
+        for (int i = 0; i < 200; i += 1) {
+            Utils.writeContents(new File(dir, id(i) + ".txt"), "object " + i);
+        }
+        assertEquals(200, pack.repack(dir));
+        String wide = id(1) + id(2);
+        Utils.writeContents(new File(dir, id(0) + ".txt"), "another");
+        Utils.writeContents(new File(dir, wide + ".txt"), "wide");
+        Utils.writeContents(new File(dir, id(200) + ".txt"), "loose");
+        Utils.writeContents(new File(dir, "ab"), "skipped");
+        assertEquals(2, new Pack(dir, "objects").repack(dir));
+        assertFalse(new File(dir, id(200) + ".txt").exists());
+        assertFalse(new File(dir, id(0) + ".txt").exists());
+        assertTrue(new File(dir, "ab").exists());
+
+        Pack p = new Pack(dir, "objects");
+        for (int i = 0; i <= 200; i += 1) {
+            assertTrue(p.contains(id(i)));
+        }
+        for (int i = 0; i < 200; i += 1) {
+            assertEquals("object " + i, new String(p.read(id(i)),
+                    StandardCharsets.UTF_8));
+        }
+        assertEquals("loose",
+                new String(p.read(id(200)), StandardCharsets.UTF_8));
+        assertEquals("wide", new String(p.read(wide), StandardCharsets.UTF_8));
+        assertFalse(p.contains(id(201)));
+        assertFalse(p.contains(id(1).substring(0, 39)));
+        assertFalse(p.contains(id(1) + id(3)));
+        try (InputStream in = p.open(id(7))) {
+            assertEquals("object 7",
+                    new String(in.readAllBytes(), StandardCharsets.UTF_8));
+        }
+        assertNull(p.open(id(201)));
+        List<String> ids = p.ids();
+        assertEquals(202, ids.size());
+        assertEquals(new ArrayList<>(new TreeSet<>(ids)), ids);
+    }
+
+    /** Checks GRAPH, which holds the history built by graphTest. */
+    private static void checkGraph(CommitGraph graph) {
+        int root = graph.indexOf(id(0)), a = graph.indexOf(id(1));
+        int b = graph.indexOf(id(2)), c = graph.indexOf(id(3));
+        int d = graph.indexOf(id(4)), e = graph.indexOf(id(5));
+        int f = graph.indexOf(id(6)), other = graph.indexOf(id(7));
+        assertEquals(8, graph.size());
+        assertEquals(-1, graph.indexOf(id(8)));
+        assertEquals(-1, graph.indexOf("abc"));
+        for (int i = 0; i < 8; i += 1) {
+            assertEquals(id(i), graph.idAt(graph.indexOf(id(i))));
+        }
+        assertArrayEquals(new int[] {1, 2, 2, 3, 3, 4, 4, 1},
+            new int[] {graph.generation(root), graph.generation(a),
+                       graph.generation(b), graph.generation(c),
+                       graph.generation(d), graph.generation(e),
+                       graph.generation(f), graph.generation(other)});
+        assertEquals(a, graph.parent(c, 0));
+        assertEquals(b, graph.parent(c, 1));
+        assertEquals(-1, graph.parent(e, 1));
+
+        int base = graph.mergeBase(e, f);
+        assertTrue(base == a || base == b);
+        assertEquals(base, graph.mergeBase(f, e));
+        assertEquals(c, graph.mergeBase(c, e));
+        assertEquals(root, graph.mergeBase(a, b));
+        assertEquals(e, graph.mergeBase(e, e));
+        assertEquals(-1, graph.mergeBase(e, other));
+
+        assertTrue(graph.isAncestor(a, e));
+        assertTrue(graph.isAncestor(b, e));
+        assertTrue(graph.isAncestor(root, f));
+        assertTrue(graph.isAncestor(e, e));
+        assertFalse(graph.isAncestor(e, a));
+        assertFalse(graph.isAncestor(c, f));
+        assertFalse(graph.isAncestor(d, e));
+        assertFalse(graph.isAncestor(other, f));
+    }
+
+    /** Generation numbers, merge bases and ancestry in a criss-cross
+     *  history, where two merges each join the same two branches and
+     *  either branch is a best common ancestor. Read back from the file,
+     *  as appended, and as written whole. */
+    @Test
+    public void graphTest() throws IOException {
+        File dir = tempDir();
+        File file = new File(dir, "graph");
+        String[][] parents = {{null, null}, {id(0), null}, {id(0), null},
+            {id(1), id(2)}, {id(2), id(1)}, {id(3), null}, {id(4), null},
+            {null, null}};
+        CommitGraph graph = new CommitGraph(file);
+        assertEquals(0, graph.size());
+        LinkedHashMap<String, String[]> all = new LinkedHashMap<>();
+        for (int i = 0; i < parents.length; i += 1) {
+            graph.append(id(i), parents[i][0], parents[i][1]);
+            all.put(id(i), parents[i]);
+        }
+        checkGraph(graph);
+        checkGraph(new CommitGraph(file));
+        File whole = new File(dir, "whole");
+        CommitGraph.write(whole, new ArrayList<>(all.keySet()), all);
+        checkGraph(new CommitGraph(whole));
+        graph.refresh();
+        checkGraph(graph);
+    }
+
+    /** Lookups stay right as appends push records past the table and
+     *  the table is written again, and files without a table read. */
+    @Test
+    public void graphTableTest() throws IOException {
+        File dir = tempDir();
+        File file = new File(dir, "graph");
+        CommitGraph graph = new CommitGraph(file);
+        for (int i = 0; i < 2500; i += 1) {
+            graph.append(id(i), i == 0 ? null : id(i - 1), null);
+            if (i % 500 == 0) {
+                graph = new CommitGraph(file);
+            }
+        }
+        CommitGraph reread = new CommitGraph(file);
+        for (CommitGraph g : new CommitGraph[] {graph, reread}) {
+            assertEquals(2500, g.size());
+            for (int i = 0; i < 2500; i += 1) {
+                assertEquals(i, g.indexOf(id(i)));
+                assertEquals(i + 1, g.generation(i));
+            }
+            assertEquals(-1, g.indexOf(id(2500)));
+        }
+
+        File old = new File(dir, "old");
+        DataOutputStream out = new DataOutputStream(
+                new FileOutputStream(old));
+        out.writeInt(0x47434752);
+        out.writeInt(1);
+        for (int i = 0; i < 3; i += 1) {
+            out.write(id(i).getBytes(StandardCharsets.US_ASCII));
+            out.writeInt(i - 1);
+            out.writeInt(-1);
+            out.writeInt(i + 1);
+        }
+        out.close();
+        CommitGraph v1 = new CommitGraph(old);
+        assertEquals(2, v1.indexOf(id(2)));
+        assertEquals(0, v1.mergeBase(v1.indexOf(id(2)), 0));
+        v1.append(id(3), id(2), null);
+        assertEquals(4, new CommitGraph(old).generation(3));
+    }
+
+    /** Ids go to the tail log until it is merged into the sorted file,
+     *  and are found by prefix either way. */
+    @Test
+    public void idIndexTest() throws IOException {
+        File file = new File(tempDir(), "ids");
+        IdIndex index = new IdIndex(file);
+        assertFalse(index.exists());
+        for (int i = 0; i < 3; i += 1) {
+            index.add(id(i));
+        }
+        assertFalse(index.exists());
+        assertEquals(List.of(id(1)), new IdIndex(file).lookup(id(1), 2));
+        for (int i = 3; i < 1030; i += 1) {
+            index.add(id(i));
+        }
+        assertTrue(index.exists());
+        index.add(id(1030));
+        IdIndex reread = new IdIndex(file);
+        for (IdIndex x : new IdIndex[] {index, reread}) {
+            for (int i = 0; i <= 1030; i += 1) {
+                assertEquals(List.of(id(i)), x.lookup(id(i), 2));
+                assertEquals(List.of(id(i)),
+                        x.lookup(id(i).substring(0, 12), 2));
+            }
+            assertEquals(2, x.lookup("a", 2).size());
+            assertTrue(x.lookup(id(1031), 2).isEmpty());
+            assertTrue(x.lookup("", 2).isEmpty());
+            assertTrue(x.lookup(id(1) + "0", 2).isEmpty());
+        }
+    }
+
+    /** The tag byte of loose blob ID in DIR. */
+    private static int tag(File dir, String id) {
+        return Utils.readContents(new File(dir, id + ".txt"))[0];
+    }
+
+    /** Blobs are stored deflated, raw or as deltas, loose or packed, and
+     *  blobs with the 80-character ids of older repositories are read and
+     *  migrated. */
+    @Test
+    public void blobStoreTest() throws IOException {
+        File dir = tempDir();
+        Pack pack = new Pack(dir, "blobs");
+        BlobStore store = new BlobStore(dir, pack, 4, 1 << 16);
+        byte[] small = "hello\n".getBytes(StandardCharsets.UTF_8);
+        String z = store.write(small);
+        assertEquals(Utils.sha1((Object) small), z);
+        assertEquals(BlobStore.DEFLATED, tag(dir, z));
+        assertArrayEquals(small, store.read(z));
+        assertEquals(1, pack.repack(dir));
+        assertFalse(new File(dir, z + ".txt").exists());
+        assertTrue(store.contains(z));
+        assertArrayEquals(small, store.read(z));
+
+        Random r = new Random(3);
+        String v1 = random(r, 1000, 1000);
+        String v2 = v1.substring(0, 3000) + "changed\n" + v1.substring(3000);
+        File work = new File(tempDir(), "f.txt");
+        Utils.writeContents(work, v1);
+        String base = store.write(work, null);
+        Utils.writeContents(work, v2);
+        String delta = store.write(work, base);
+        assertEquals(BlobStore.DELTA, tag(dir, delta));
+        assertEquals(0, store.depth(base));
+        assertEquals(1, store.depth(delta));
+        assertEquals(v2, new String(store.read(delta),
+                StandardCharsets.UTF_8));
+        assertEquals(delta, store.write(work, base));
+
+        BlobStore raw = new BlobStore(dir, pack, 0, 64);
+        assertEquals(delta, raw.write(work, null));
+        Utils.writeContents(work, v1 + "raw\n");
+        String r1 = raw.write(work, base);
+        assertEquals(BlobStore.RAW, tag(dir, r1));
+        assertEquals(v1 + "raw\n", new String(raw.read(r1),
+                StandardCharsets.UTF_8));
+        ByteArrayOutputStream copy = new ByteArrayOutputStream();
+        try (InputStream in = raw.open(r1)) {
+            in.transferTo(copy);
+        }
+        assertEquals(v1 + "raw\n", copy.toString(StandardCharsets.UTF_8));
+        File out = new File(tempDir(), "out.txt");
+        raw.copyTo(r1, out);
+        assertEquals(v1 + "raw\n", Utils.readContentsAsString(out));
+
+        byte[] old = "old contents\n".getBytes(StandardCharsets.UTF_8);
+        String legacy = Utils.sha1((Object) old) + Utils.sha1("a.txt");
+        Utils.writeContents(new File(dir, legacy + ".txt"), (Object) old);
+        assertEquals(Utils.sha1((Object) old), BlobStore.contentId(legacy));
+        assertEquals(z, BlobStore.contentId(z));
+        assertTrue(store.contains(legacy));
+        assertArrayEquals(old, store.read(legacy));
+        assertEquals(0, store.depth(legacy));
+        assertEquals(1, store.migrate());
+        assertFalse(new File(dir, legacy + ".txt").exists());
+        assertTrue(store.contains(legacy));
+        assertArrayEquals(old, store.read(legacy));
+        assertEquals(BlobStore.DEFLATED,
+                tag(dir, BlobStore.contentId(legacy)));
+        assertEquals(0, store.migrate());
+
+        String bad = Utils.sha1("other contents") + Utils.sha1("b.txt");
+        Utils.writeContents(new File(dir, bad + ".txt"), (Object) old);
+        assertEquals(0, store.migrate());
+        assertTrue(new File(dir, bad + ".txt").exists());
+        assertArrayEquals(old, store.read(bad));
+    }
+
+    /** Deltas rebuild their targets. */
+    @Test
+    public void deltaTest() throws IOException {
+        Random r = new Random(5);
+        for (int t = 0; t < 20; t += 1) {
+            byte[] base = random(r, r.nextInt(300), 40)
+                    .getBytes(StandardCharsets.UTF_8);
+            byte[] target = (t % 2 == 0 ? random(r, r.nextInt(300), 40)
+                    : new String(base, StandardCharsets.UTF_8) + "tail\n")
+                    .getBytes(StandardCharsets.UTF_8);
+            byte[] delta = Delta.create(base, target);
+            assertArrayEquals(target, Delta.apply(base, new DataInputStream(
+                    new ByteArrayInputStream(delta))));
+        }
+    }
+
+    /** Stat data is trusted only for files older than the index. */
+    @Test
+    public void statIndexTest() throws IOException {
+        File dir = tempDir();
+        File file = new File(dir, "index");
+        File f = new File(dir, "f.txt");
+        Utils.writeContents(f, "one");
+        long past = System.currentTimeMillis() - 60000;
+        f.setLastModified(past);
+        StatIndex index = new StatIndex(file);
+        assertNull(index.lookup("f.txt", f));
+        String id = Utils.sha1("one");
+        assertEquals(id, index.contentId("f.txt", f));
+        assertNull(index.lookup("f.txt", f));
+        index.save();
 
+        StatIndex reread = new StatIndex(file);
+        assertEquals(id, reread.lookup("f.txt", f));
+        assertNull(reread.lookup("g.txt", f));
+        Utils.writeContents(f, "three");
+        f.setLastModified(past);
+        assertNull(reread.lookup("f.txt", f));
+        assertEquals(Utils.sha1("three"), reread.contentId("f.txt", f));
 
+        Utils.writeContents(f, "four!");
+        f.setLastModified(System.currentTimeMillis() + 60000);
+        reread.contentId("f.txt", f);
+        reread.save();
+        StatIndex racy = new StatIndex(file);
+        assertNull(racy.lookup("f.txt", f));
+        assertEquals(Utils.sha1("four!"), racy.contentId("f.txt", f));
+        racy.remove("f.txt");
+        racy.save();
+        f.setLastModified(past);
+        assertNull(new StatIndex(file).lookup("f.txt", f));
+    }
+
+    /** Messages and their words are found in the sorted files and in the
+     *  tails, before and after a tail is merged. */
+    @Test
+    public void messageIndexTest() throws IOException {
+        assertEquals(List.of("fix", "the", "parser", "it", "again"),
+                new ArrayList<>(MessageIndex.tokens("Fix the  parser, "
+                        + "fix it again!")));
+        File dir = new File(tempDir(), "messages");
+        MessageIndex index = new MessageIndex(dir);
+        assertFalse(index.exists());
+        Map<String, String> messages = Map.of(id(1), "Fix the parser",
+                id(2), "parser: fix again");
+        index.rewrite(List.of(id(1), id(2)), messages::get);
+        assertTrue(index.exists());
+        index.add(id(3), "Fix the parser");
+        assertEquals(Set.of(id(1), id(3)), index.exact("Fix the parser"));
+        assertEquals(new TreeSet<>(List.of(id(1), id(2), id(3))),
+                index.word("parser"));
+        assertTrue(index.exact("fix the parser").isEmpty());
+        assertTrue(index.word("none").isEmpty());
+        index.add(id(4), "parser again");
+        assertEquals(4, index.word("parser").size());
+
+        for (int i = 5; i < 4200; i += 1) {
+            index.add(id(i), "commit " + i);
+        }
+        assertFalse(new File(dir, "exact.log").length() > 4096 * 40);
+        assertEquals(Set.of(id(4199)), index.exact("commit 4199"));
+        assertEquals(4195, index.word("commit").size());
+        MessageIndex reread = new MessageIndex(dir);
+        assertEquals(Set.of(id(1), id(3)), reread.exact("Fix the parser"));
+        assertEquals(Set.of(id(17)), reread.exact("commit 17"));
+        assertEquals(Set.of(id(4199)), reread.exact("commit 4199"));
+        assertEquals(Set.of(id(4199)), reread.word("4199"));
+        assertEquals(4195, reread.word("commit").size());
+    }
+
+    /** Records read back in the order they were appended, after a
+     *  rewrite too. */
+    @Test
+    public void journalTest() throws IOException {
+        File file = new File(tempDir(), "journal");
+        Journal journal = new Journal(file);
+        assertFalse(journal.exists());
+        String[] messages = {"initial commit", "", "Fix \u00e9\u4e2d\n"};
+        for (int i = 0; i < messages.length; i += 1) {
+            journal.append(id(i), 1000L * i, messages[i]);
+        }
+        assertTrue(journal.exists());
+        List<String> seen = new ArrayList<>();
+        journal.read((id, time, message) ->
+                seen.add(id + " " + time + " " + message));
+        assertEquals(List.of(id(0) + " 0 initial commit", id(1) + " 1000 ",
+                id(2) + " 2000 Fix \u00e9\u4e2d\n"), seen);
+
+        Map<String, Commit> commits = Map.of(id(5),
+                new Commit("five", id(0), null));
+        journal.rewrite(List.of(id(5)), commits::get);
+        journal.append(id(6), 6, "six");
+        seen.clear();
+        new Journal(file).read((id, time, message) -> seen.add(message));
+        assertEquals(List.of("five", "six"), seen);
+    }
+
+    /** Snapshots share the trees of unchanged directories, and updates
+     *  read and write only the trees on changed paths. */
+    @Test
+    public void treeStoreTest() throws IOException {
+        File dir = tempDir();
+        TreeStore trees = new TreeStore(new File(dir, "trees"),
+                new Pack(dir, "trees"));
+        TreeMap<String, String> files = new TreeMap<>();
+        files.put("a.txt", id(1));
+        files.put("doc/r.txt", id(2));
+        files.put("src/x/y.txt", id(3));
+        files.put("src/z.txt", id(4));
+        String root = trees.write(files);
+        assertEquals(files, new TreeMap<>(trees.flatten(root)));
+        assertEquals(id(3), trees.lookup(root, "src/x/y.txt"));
+        assertNull(trees.lookup(root, "src/x/none.txt"));
+        assertEquals(root, trees.write(new LinkedHashMap<>(files)));
+        assertEquals(root, trees.update(root, Map.of()));
+
+        String root2 = trees.update(root, Map.of("src/z.txt", id(5)));
+        Tree t1 = trees.read(root), t2 = trees.read(root2);
+        assertEquals(t1.get("doc"), t2.get("doc"));
+        assertEquals(t1.get("a.txt"), t2.get("a.txt"));
+        assertNotEquals(t1.get("src"), t2.get("src"));
+        assertEquals(trees.read(t1.get("src").id()).get("x"),
+                trees.read(t2.get("src").id()).get("x"));
+        files.put("src/z.txt", id(5));
+        assertEquals(files, new TreeMap<>(trees.flatten(root2)));
+        assertEquals(root2, trees.write(files));
+
+        HashMap<String, String> changes = new HashMap<>();
+        changes.put("doc/r.txt", null);
+        changes.put("new/deep/n.txt", id(6));
+        String root3 = trees.update(root2, changes);
+        Tree t3 = trees.read(root3);
+        assertNull(t3.get("doc"));
+        assertTrue(t3.get("new").isTree());
+        assertEquals(t2.get("src"), t3.get("src"));
+
+        List<String> seen = new ArrayList<>();
+        trees.diff(root, root3, (path, before, after) ->
+                seen.add(path + " " + before + " " + after));
+        seen.sort(null);
+        assertEquals(List.of("doc/r.txt " + id(2) + " null",
+                "new/deep/n.txt null " + id(6),
+                "src/z.txt " + id(4) + " " + id(5)), seen);
+        HashMap<String, String> removed = new HashMap<>();
+        for (String path : files.keySet()) {
+            removed.put(path, null);
+        }
+        String empty = trees.update(root2, removed);
+        assertEquals(trees.write(new Tree()), empty);
+        assertTrue(trees.flatten(empty).isEmpty());
+    }
+
+    /** The unified diff from A to B, giving up on a middle snake after
+     *  MINCOST edits and keeping the bits MASK of each line hash. */
+    private static String diff(String a, String b, int minCost, long mask)
+        throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new Diff(out, minCost, mask).file("f", source(a), source(b));
+        return out.toString(StandardCharsets.UTF_8);
+    }
+
+    /** The unified diff from A to B. */
+    private static String diff(String a, String b) throws IOException {
+        return diff(a, b, Diff.MIN_COST, -1L);
+    }
+
+    /** A version whose contents are S, or null for no file. */
+    private static Diff.Source source(String s) {
+        if (s == null) {
+            return null;
+        }
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        return () -> new ByteArrayInputStream(bytes);
+    }
+
+    /** A applied with the hunks of the unified diff D, checking that the
+     *  context and removed lines match A. */
+    private static String patch(String a, String d) {
+        List<String> from = lines(a);
+        List<String> to = new ArrayList<>();
+        List<String> hunks = lines(d);
+        int at = 0;
+        for (int h = 0; h < hunks.size(); h += 1) {
+            String l = hunks.get(h);
+            if (!l.startsWith("@@")) {
+                continue;
+            }
+            String[] r = l.split(" ")[1].substring(1).split(",");
+            int start = Integer.parseInt(r[0]);
+            if (r.length == 1 || !r[1].equals("0")) {
+                start -= 1;
+            }
+            while (at < start) {
+                to.add(from.get(at++));
+            }
+            for (h += 1; h < hunks.size()
+                     && !hunks.get(h).startsWith("@@"); h += 1) {
+                String x = hunks.get(h);
+                if (x.startsWith("\\")) {
+                    continue;
+                }
+                if (x.charAt(0) != '+') {
+                    assertEquals(from.get(at++), x.substring(1));
+                }
+                if (x.charAt(0) != '-') {
+                    to.add(x.substring(1));
+                }
+            }
+            h -= 1;
+        }
+        while (at < from.size()) {
+            to.add(from.get(at++));
+        }
+        return to.isEmpty() ? "" : String.join("\n", to) + "\n";
+    }
+
+    /** The lines of S, without their newlines. */
+    private static List<String> lines(String s) {
+        List<String> result = new ArrayList<>();
+        if (s != null && !s.isEmpty()) {
+            result.addAll(Arrays.asList(s.split("\n", -1)));
+            result.remove(result.size() - 1);
+        }
+        return result;
+    }
+
+    /** The number of lines the unified diff D removes or adds. */
+    private static int changes(String d) {
+        int n = 0;
+        for (String l : lines(d)) {
+            if (l.matches("[-+]([^-+].*)?")) {
+                n += 1;
+            }
+        }
+        return n;
+    }
+
+    /** Lines only added. */
+    @Test
+    public void diffInsertOnlyTest() throws IOException {
+        String d = diff("a\nb\nc\n", "a\nb\nx\ny\nc\n");
+        assertEquals("diff --gitlet a/f b/f\n--- a/f\n+++ b/f\n"
+                + "@@ -1,3 +1,5 @@\n a\n b\n+x\n+y\n c\n", d);
+    }
+
+    /** Lines only removed. */
+    @Test
+    public void diffDeleteOnlyTest() throws IOException {
+        String d = diff("a\nb\nc\nd\ne\n", "a\ne\n");
+        assertEquals("diff --gitlet a/f b/f\n--- a/f\n+++ b/f\n"
+                + "@@ -1,5 +1,2 @@\n a\n-b\n-c\n-d\n e\n", d);
+    }
+
+    /** The same lines in another order. */
+    @Test
+    public void diffReorderedTest() throws IOException {
+        String a = "1\n2\n3\n4\n5\n6\n7\n8\n";
+        String b = "5\n6\n7\n8\n1\n2\n3\n4\n";
+        String d = diff(a, b);
+        assertEquals(b, patch(a, d));
+        assertEquals(8, changes(d));
+    }
+
+    /** Lines whose hashes collide are still told apart by their contents,
+     *  and only the lines that differ are changes. */
+    @Test
+    public void diffCollisionTest() throws IOException {
+        assertEquals("", diff("a\nb\nc\n", "a\nb\nc\n", Diff.MIN_COST, 0));
+        assertEquals("diff --gitlet a/f b/f\n--- a/f\n+++ b/f\n"
+                + "@@ -1,3 +1,3 @@\n a\n-b\n+x\n c\n",
+                diff("a\nb\nc\n", "a\nx\nc\n", Diff.MIN_COST, 0));
+        Random r = new Random(7);
+        for (int t = 0; t < 50; t += 1) {
+            String a = random(r, 1 + r.nextInt(60), 8);
+            String b = random(r, 1 + r.nextInt(60), 8);
+            for (long mask : new long[] {0, 1, 3}) {
+                assertEquals(b, patch(a, diff(a, b, Diff.MIN_COST, mask)));
+            }
+        }
+    }
+
+    /** Giving up on middle snakes still yields a valid edit script, if
+     *  not a minimal one. */
+    @Test
+    public void diffCostLimitTest() throws IOException {
+        Random r = new Random(11);
+        for (int t = 0; t < 50; t += 1) {
+            String a = random(r, 200 + r.nextInt(200), 20);
+            String b = random(r, 200 + r.nextInt(200), 20);
+            assertEquals(b, patch(a, diff(a, b, 1, -1L)));
+            assertEquals(b, patch(a, diff(a, b, 2, 3)));
+        }
+        String a = random(r, 3000, 50);
+        String b = random(r, 3000, 50);
+        String capped = diff(a, b, 1, -1L);
+        String full = diff(a, b);
+        assertEquals(b, patch(a, capped));
+        assertEquals(b, patch(a, full));
+        assertTrue(changes(capped) > changes(full));
+    }
+
+    /** Diffs of empty and identical versions. */
+    @Test
+    public void diffEmptyTest() throws IOException {
+        assertEquals("", diff("", ""));
+        assertEquals("", diff(null, null));
+        assertEquals("", diff("a\nb\n", "a\nb\n"));
+        assertEquals("a\nb\n", patch("", diff(null, "a\nb\n")));
+        assertEquals("a\nb\n", patch("", diff("", "a\nb\n")));
+        assertEquals("", patch("a\nb\n", diff("a\nb\n", null)));
+    }
+}
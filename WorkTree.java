@@ -0,0 +1,234 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.regex.Pattern;
+
+/**
+ * WorkTree class for Gitlet, the tiny stupid version-control system.
+ * Lists every file of the working directory, subdirectories included,
+ * reading each directory on a pool of worker threads. Commands list the
+ * working directory once and share the listing between their checks.
+ *
+ * The .gitlet directory is never listed, and neither is anything
+ * matched by .gitletignore at the top of the working directory. It has
+ * one glob per line: * and ? match within one name, ** matches across
+ * directories, a pattern containing a / is matched against the whole
+ * path from the top and any other against each name, and a trailing /
+ * makes a pattern match only directories. Blank lines and lines that
+ * start with # are skipped. An ignored directory is not read at all.
+ * Files named explicitly, as by add, are not subject to the patterns.
+ *
+ * @author Erin Bhan
+ */
+class WorkTree {
+
+    /** Name of the file of ignore patterns.*/
+    static final String IGNORE_FILE = ".gitletignore";
+
+    /** One ignore pattern.*/
+    private static class Rule {
+        /** The pattern as a regular expression.*/
+        private final Pattern pattern;
+        /** Whether it is matched against whole paths.*/
+        private final boolean path;
+        /** Whether it matches only directories.*/
+        private final boolean directory;
+
+        /** The rule of one line of the ignore file.
+         * @param line The line, neither blank nor a comment.
+         */
+        Rule(String line) {
+            directory = line.endsWith("/");
+            if (directory) {
+                line = line.substring(0, line.length() - 1);
+            }
+            path = line.contains("/");
+            if (line.startsWith("/")) {
+                line = line.substring(1);
+            }
+            pattern = Pattern.compile(glob(line));
+        }
+
+        /** Whether the rule matches the file or directory at PATH1.
+         * @param path1 Its path, with / between directories.
+         * @param name Its last component.
+         * @param dir Whether it is a directory.
+         * @return true if it is ignored.
+         */
+        boolean matches(String path1, String name, boolean dir) {
+            return (dir || !directory)
+                    && pattern.matcher(path ? path1 : name).matches();
+        }
+    }
+
+    /** The working directory.*/
+    private final File root;
+    /** The ignore patterns.*/
+    private final List<Rule> rules = new ArrayList<>();
+
+    /** The working directory ROOT1, with the patterns of its ignore
+     * file.
+     * @param root1 The working directory.
+     */
+    WorkTree(File root1) {
+        root = root1;
+        File ignore = new File(root, IGNORE_FILE);
+        if (ignore.isFile()) {
+            for (String line : Utils.readContentsAsString(ignore)
+                    .split("\r?\n")) {
+                String t = line.trim();
+                if (!t.isEmpty() && !t.startsWith("#")) {
+                    rules.add(new Rule(t));
+                }
+            }
+        }
+    }
+
+    /** Every file that is not ignored.
+     * @return Returns their paths, with / between directories, sorted.
+     */
+    List<String> list() {
+        Stats.Timer t = Stats.time(Stats.Phase.WORKTREE);
+        try {
+            List<String> result =
+                    ForkJoinPool.commonPool().invoke(new Scan(root, ""));
+            Collections.sort(result);
+            return result;
+        } finally {
+            t.end();
+        }
+    }
+
+    /** Whether the file or directory at PATH is ignored.
+     * @param path Its path, with / between directories.
+     * @param name Its last component.
+     * @param dir Whether it is a directory.
+     * @return true if a pattern matches it.
+     */
+    private boolean ignored(String path, String name, boolean dir) {
+        for (Rule r : rules) {
+            if (r.matches(path, name, dir)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Lists one directory and, in parallel, those below it.*/
+    private class Scan extends RecursiveTask<List<String>> {
+        /** Version of the serialized form.*/
+        private static final long serialVersionUID = 1L;
+        /** The directory.*/
+        private final File dir;
+        /** Its path and a /, or "" for the working directory.*/
+        private final String prefix;
+
+        /** A scan of DIR1, found at PREFIX1.
+         * @param dir1 The directory.
+         * @param prefix1 Its path and a /, or "".
+         */
+        Scan(File dir1, String prefix1) {
+            dir = dir1;
+            prefix = prefix1;
+        }
+
+        @Override
+        protected List<String> compute() {
+            ArrayList<String> result = new ArrayList<>();
+            String[] names = dir.list();
+            if (names == null) {
+                return result;
+            }
+            Stats.add(Stats.Counter.FILES_LISTED, names.length);
+            ArrayList<Scan> subs = new ArrayList<>();
+            for (String name : names) {
+                if (prefix.isEmpty() && name.equals(".gitlet")) {
+                    continue;
+                }
+                File f = new File(dir, name);
+                String path = prefix + name;
+                BasicFileAttributes a;
+                try {
+                    a = Files.readAttributes(f.toPath(),
+                            BasicFileAttributes.class,
+                            LinkOption.NOFOLLOW_LINKS);
+                } catch (IOException excp) {
+                    continue;
+                }
+                boolean file = a.isRegularFile()
+                        || a.isSymbolicLink() && f.isFile();
+                if (a.isDirectory() && !ignored(path, name, true)) {
+                    Scan s = new Scan(f, path + "/");
+                    s.fork();
+                    subs.add(s);
+                } else if (file && !ignored(path, name, false)) {
+                    result.add(path);
+                }
+            }
+            for (Scan s : subs) {
+                result.addAll(s.join());
+            }
+            return result;
+        }
+    }
+
+    /** Deletes the file NAME from the working directory ROOT1, and then
+     * each directory above it that is left empty. Like
+     * Utils.restrictedDelete, refuses unless ROOT1 holds a .gitlet
+     * directory.
+     * @param root1 The working directory.
+     * @param name The file's path, with / between directories.
+     * @return true if the file was deleted.
+     */
+    static boolean delete(File root1, String name) {
+        if (!new File(root1, ".gitlet").isDirectory()) {
+            throw new IllegalArgumentException("not .gitlet working "
+                    + "directory");
+        }
+        File f = Utils.join(root1, name);
+        if (f.isDirectory() || !f.delete()) {
+            return false;
+        }
+        File d = f.getParentFile();
+        while (d != null && !d.equals(root1) && d.delete()) {
+            d = d.getParentFile();
+        }
+        return true;
+    }
+
+    /** The regular expression of the glob G.
+     * @param g The glob.
+     * @return Returns the expression.
+     */
+    private static String glob(String g) {
+        StringBuilder r = new StringBuilder();
+        for (int i = 0; i < g.length(); i += 1) {
+            char c = g.charAt(i);
+            if (c == '*' && i + 1 < g.length() && g.charAt(i + 1) == '*') {
+                i += 1;
+                if (i + 1 < g.length() && g.charAt(i + 1) == '/') {
+                    i += 1;
+                    r.append("(?:.*/)?");
+                } else {
+                    r.append(".*");
+                }
+            } else if (c == '*') {
+                r.append("[^/]*");
+            } else if (c == '?') {
+                r.append("[^/]");
+            } else {
+                r.append(Pattern.quote(String.valueOf(c)));
+            }
+        }
+        return r.toString();
+    }
+}
@@ -0,0 +1,197 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * RepoBench class for Gitlet, the tiny stupid version-control system.
+ * JMH benchmarks of the core commands. Each trial runs in its own JVM
+ * against a repository made by Generator in a temporary directory:
+ * COMMITS commits over master and BRANCHES branches forked from it,
+ * each changing one of FILES files of FILESIZE bytes. Contents come
+ * from a fixed seed, so every run builds the same repository. Commands
+ * print nothing, and caches stay warm from one call to the next, as in
+ * a batch or the daemon.
+ *
+ * Run with "make bench JMH_CP=...", passing JMH options in BENCH_ARGS,
+ * e.g. BENCH_ARGS="-p commits=1000 RepoBench.merge".
+ *
+ * @author Erin Bhan
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RepoBench {
+
+    /** Seed of the generated contents.*/
+    private static final long SEED = 61;
+
+    /** Number of commits on master.*/
+    @Param({"100", "1000"})
+    private int commits;
+    /** Number of files in the working directory.*/
+    @Param({"10", "100"})
+    private int files;
+    /** Size of each file in bytes.*/
+    @Param({"1024", "65536"})
+    private int fileSize;
+    /** Number of branches besides master.*/
+    @Param({"1", "4"})
+    private int branches;
+
+    /** The generated repository.*/
+    private Path dir;
+    /** The repository, once generated.*/
+    private Repo repo;
+    /** Source of file contents.*/
+    private Random random;
+    /** Master's head after generation.*/
+    private String head;
+    /** The first branch's head after generation.*/
+    private String other;
+    /** Number of calls so far, to alternate between targets.*/
+    private int calls;
+
+    /** Generates the repository. Repo reads its location once, so this
+     * must run before anything touches Repo.*/
+    @Setup(Level.Trial)
+    public void generate() throws IOException {
+        dir = Files.createTempDirectory("gitlet-bench");
+        System.setProperty("gitlet.dir", dir.toString());
+        System.setOut(new PrintStream(PrintStream.nullOutputStream()));
+        random = new Random(SEED);
+        new Generator().set("seed", SEED).set("commits", commits)
+                .set("branches", branches + 1).set("files", files)
+                .set("size", fileSize).run();
+        repo = new Repo();
+        head = ref("master");
+        other = ref("b1");
+    }
+
+    /** Deletes the repository.*/
+    @TearDown(Level.Trial)
+    public void delete() throws IOException {
+        try (Stream<Path> walk = Files.walk(dir)) {
+            walk.sorted(Comparator.reverseOrder()).map(Path::toFile)
+                    .forEach(File::delete);
+        }
+    }
+
+    /** A working directory with f0.txt changed, for add and commit.*/
+    @State(Scope.Benchmark)
+    public static class Changed {
+        /** Changes f0.txt.
+         * @param bench The benchmark state.
+         */
+        @Setup(Level.Invocation)
+        public void touch(RepoBench bench) throws IOException {
+            bench.write("f0.txt");
+        }
+    }
+
+    /** Master at its generated head, for merge.*/
+    @State(Scope.Benchmark)
+    public static class Unmerged {
+        /** Undoes the previous merge.
+         * @param bench The benchmark state.
+         */
+        @Setup(Level.Invocation)
+        public void unmerge(RepoBench bench) throws IOException {
+            bench.repo.reset(bench.head);
+        }
+    }
+
+    /** Stages a changed file.*/
+    @Benchmark
+    public void add(Changed changed) throws IOException {
+        repo.add("f0.txt");
+    }
+
+    /** Commits a changed file.*/
+    @Benchmark
+    public void commit(Changed changed) throws IOException {
+        repo.add("f0.txt");
+        repo.commit("bench " + calls++);
+    }
+
+    /** Prints the history of master.*/
+    @Benchmark
+    public void log() throws IOException {
+        repo.log();
+    }
+
+    /** Prints the status.*/
+    @Benchmark
+    public void status() {
+        repo.status();
+    }
+
+    /** Switches between master and the first branch.*/
+    @Benchmark
+    public void checkout3() throws IOException {
+        repo.checkout3(calls++ % 2 == 0 ? "b1" : "master");
+    }
+
+    /** Moves master between its head and the first branch's.*/
+    @Benchmark
+    public void reset() throws IOException {
+        repo.reset(calls++ % 2 == 0 ? other : head);
+    }
+
+    /** Merges the first branch into master, from master's head.*/
+    @Benchmark
+    public void merge(Unmerged unmerged) throws IOException {
+        repo.merge("b1");
+    }
+
+    /** Finds the split point of master and the first branch.*/
+    @Benchmark
+    public String splitSection() {
+        return Repo.splitSection("b1");
+    }
+
+    /** Writes FILESIZE bytes of printable text to NAME.
+     * @param name The file's name.
+     */
+    private void write(String name) throws IOException {
+        byte[] contents = new byte[fileSize];
+        for (int i = 0; i < contents.length; i += 1) {
+            contents[i] = (i + 1) % 64 == 0 ? (byte) '\n'
+                    : (byte) (' ' + random.nextInt(95));
+        }
+        Files.write(dir.resolve(name), contents);
+    }
+
+    /** The head of a branch.
+     * @param branch The branch.
+     * @return Returns the commit id.
+     */
+    private String ref(String branch) throws IOException {
+        return Files.readString(
+                dir.resolve(".gitlet/branches/" + branch + ".txt"));
+    }
+}